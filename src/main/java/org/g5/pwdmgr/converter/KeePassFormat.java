@@ -0,0 +1,28 @@
+package org.g5.pwdmgr.converter;
+
+import java.util.Arrays;
+
+/**
+ * The KeePass XML formats I can convert to.
+ *
+ * @author gerard.fernandes@gmail.com
+ */
+public enum KeePassFormat {
+	/** the flat KeePass 1.x <code>pwlist</code> - custom fields end up in the notes. */
+	KEEPASS_1("1"),
+	/** the KeePass 2.x (KDBX) XML - custom fields are kept as entry strings. */
+	KEEPASS_2("2");
+
+	private final String version;
+
+	KeePassFormat(String version) {
+		this.version = version;
+	}
+
+	public static KeePassFormat fromVersion(String version) {
+		return Arrays.stream(values())
+				.filter(format -> format.version.equals(version))
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Unsupported KeePass format version - " + version));
+	}
+}
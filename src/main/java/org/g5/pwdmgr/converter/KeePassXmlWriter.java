@@ -0,0 +1,107 @@
+package org.g5.pwdmgr.converter;
+
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.StAXStreamOutputter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * I stream a KeePass XML export straight to a writer - either a KeePass 1.x <code>pwlist</code> of <code>pwentry</code>
+ * elements, or a KeePass 2.x <code>KeePassFile</code> holding a single import <code>Group</code> of <code>Entry</code>
+ * elements. Each entry is written as soon as it is converted and then forgotten, so memory stays constant however many
+ * entries are exported, and the output is written exactly once.
+ * <p>
+ * The document is only closed off when I am {@link #complete() completed}. {@link #close() Closing} me without
+ * completing me - as when a conversion fails part way - closes the underlying writer on an incomplete document, so a
+ * partial export can never pass for a whole one.
+ *
+ * @author gerard.fernandes@gmail.com
+ */
+public class KeePassXmlWriter implements Closeable {
+
+	//factories and formats are thread-safe once configured - shared by every writer
+	private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newFactory();
+	private static final Format entryFormat = Format.getPrettyFormat();
+
+	static final String IMPORT_GROUP_NAME = "Revelation Import";
+
+	private final Writer out;
+	private final XMLStreamWriter xmlStreamWriter;
+	private final StAXStreamOutputter entryOutputter = new StAXStreamOutputter(entryFormat);
+	private long entryCount;
+
+	public KeePassXmlWriter(Writer out) throws XMLStreamException {
+		this(out, KeePassFormat.KEEPASS_1);
+	}
+
+	public KeePassXmlWriter(Writer out, KeePassFormat format) throws XMLStreamException {
+		this.out = out;
+		this.xmlStreamWriter = xmlOutputFactory.createXMLStreamWriter(out);
+		xmlStreamWriter.writeStartDocument("UTF-8", "1.0");
+		xmlStreamWriter.writeCharacters("\n");
+		switch (format) {
+			case KEEPASS_1 -> xmlStreamWriter.writeStartElement("pwlist");
+			case KEEPASS_2 -> writeKeePass2Start();
+		}
+	}
+
+	private void writeKeePass2Start() throws XMLStreamException {
+		xmlStreamWriter.writeStartElement("KeePassFile");
+		xmlStreamWriter.writeStartElement("Meta");
+		writeSimpleElement("Generator", "RevelationToKeePassConverter");
+		xmlStreamWriter.writeEndElement();
+		xmlStreamWriter.writeStartElement("Root");
+		xmlStreamWriter.writeStartElement("Group");
+		writeSimpleElement("UUID", RevelationToKeePassConverter.kp2Uuid());
+		writeSimpleElement("Name", IMPORT_GROUP_NAME);
+		writeSimpleElement("IsExpanded", "True");
+	}
+
+	private void writeSimpleElement(String name, String text) throws XMLStreamException {
+		xmlStreamWriter.writeStartElement(name);
+		xmlStreamWriter.writeCharacters(text);
+		xmlStreamWriter.writeEndElement();
+	}
+
+	public void write(Element kpEntry) throws XMLStreamException {
+		xmlStreamWriter.writeCharacters("\n");
+		entryOutputter.output(kpEntry, xmlStreamWriter);
+		entryCount++;
+	}
+
+	/**
+	 * @return the number of entries written so far.
+	 */
+	public long entryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Closes off the document, once every entry has been written.
+	 */
+	public void complete() throws IOException {
+		try {
+			xmlStreamWriter.writeCharacters("\n");
+			//writeEndDocument closes every element still open - the pwlist, or the Group, Root and KeePassFile
+			xmlStreamWriter.writeEndDocument();
+			xmlStreamWriter.close();
+			out.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to complete KeePass XML output!", e);
+		}
+	}
+
+	/**
+	 * Closes the underlying writer - leaving the document incomplete, unless I have been {@link #complete() completed}.
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,203 @@
+package org.g5.pwdmgr.converter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * I convert many Revelation exports in one go - concurrently, on a bounded pool of threads - rather than one file per
+ * JVM launch. Every conversion shares the one, already tuned pipeline: the XML reader and writer factories, the output
+ * format and the entry converter are all set up once, and are safe to share across threads.
+ * <p>
+ * Files are already converted in parallel, so the entries within each file are converted one by one, as they are read.
+ * <p>
+ * A failed file does not stop the batch: each file's outcome is reported in the {@link Summary summary}, with timings.
+ *
+ * @author gerard.fernandes@gmail.com
+ */
+public class RevelationBatchConverter {
+
+	private static final Logger log = LoggerFactory.getLogger(RevelationBatchConverter.class);
+
+	private static final String GLOB_CHARACTERS = "*?[{";
+	private static final String ANY_DIRECTORIES = "**/";
+
+	private final int parallelism;
+	private final KeePassFormat format;
+
+	public RevelationBatchConverter(int parallelism) {
+		this(parallelism, KeePassFormat.KEEPASS_1);
+	}
+
+	public RevelationBatchConverter(int parallelism, KeePassFormat format) {
+		Validate.isTrue(parallelism > 0, "Parallelism must be positive!");
+		this.parallelism = parallelism;
+		this.format = Objects.requireNonNull(format, "No KeePass format specified! Can not continue!");
+	}
+
+	/**
+	 * Converts each of the given files, to the output file chosen for it. Files whose output would be the same - e.g.
+	 * same-named files from different directories, written to one output directory - are failed, and none of them is
+	 * converted: one would otherwise silently replace another.
+	 *
+	 * @return the outcome of each conversion, in the order the files were given.
+	 */
+	public Summary convert(List<File> revelationFiles, Function<File, File> outputFileFor) throws InterruptedException {
+		long start = System.nanoTime();
+		List<File> outputFiles = revelationFiles.stream().map(outputFileFor).toList();
+		Map<Path, Long> outputCounts = outputFiles.stream()
+				.collect(Collectors.groupingBy(RevelationBatchConverter::normalized, Collectors.counting()));
+		List<Future<FileResult>> conversions = new ArrayList<>(revelationFiles.size());
+		try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, revelationFiles.size())))) {
+			for (int i = 0; i < revelationFiles.size(); i++) {
+				File revelationFile = revelationFiles.get(i);
+				File outputFile = outputFiles.get(i);
+				if (outputCounts.get(normalized(outputFile)) > 1) {
+					log.error("Not converting {} - its output {} is shared with another file!", revelationFile, outputFile);
+					conversions.add(CompletableFuture.completedFuture(new FileResult(revelationFile, outputFile, 0, Duration.ZERO,
+							new IllegalArgumentException("Output " + outputFile + " is shared with another file!"))));
+				} else {
+					conversions.add(executor.submit(() -> convertFile(revelationFile, outputFile)));
+				}
+			}
+			List<FileResult> results = new ArrayList<>(conversions.size());
+			for (Future<FileResult> conversion : conversions) {
+				results.add(resultOf(conversion));
+			}
+			return new Summary(results, Duration.ofNanos(System.nanoTime() - start));
+		}
+	}
+
+	private static Path normalized(File file) {
+		return file.getAbsoluteFile().toPath().normalize();
+	}
+
+	private FileResult convertFile(File revelationFile, File outputFile) {
+		long start = System.nanoTime();
+		try {
+			long entryCount = RevelationToKeePassConverter.convert(revelationFile, outputFile, format, null);
+			FileResult result = new FileResult(revelationFile, outputFile, entryCount, Duration.ofNanos(System.nanoTime() - start), null);
+			log.info("Converted {}", result);
+			return result;
+		} catch (Exception e) {
+			log.error("Failed to convert {}!", revelationFile, e);
+			return new FileResult(revelationFile, outputFile, 0, Duration.ofNanos(System.nanoTime() - start), e);
+		}
+	}
+
+	private static FileResult resultOf(Future<FileResult> conversion) throws InterruptedException {
+		try {
+			return conversion.get();
+		} catch (ExecutionException e) {
+			//convertFile reports its own failures - anything else is a bug
+			throw new IllegalStateException("Conversion failed unexpectedly!", e.getCause());
+		}
+	}
+
+	/**
+	 * Resolves the Revelation exports to convert: every <code>.xml</code> file in a directory, or every file matching a
+	 * glob - e.g. <code>/data/vaults/**&#47;*.xml</code>, which includes the files directly in <code>vaults</code> as
+	 * well as those in its subdirectories. Previously converted outputs are never included.
+	 */
+	public static List<File> resolveSources(String directoryOrGlob) throws IOException {
+		int globStart = StringUtils.indexOfAny(directoryOrGlob, GLOB_CHARACTERS);
+		Path baseDirectory;
+		String pattern;
+		if (globStart < 0) {
+			baseDirectory = Path.of(directoryOrGlob);
+			if (!Files.isDirectory(baseDirectory)) {
+				return List.of(baseDirectory.toFile());
+			}
+			pattern = "*.xml";
+		} else {
+			int separator = Math.max(directoryOrGlob.lastIndexOf('/', globStart), directoryOrGlob.lastIndexOf(File.separatorChar, globStart));
+			baseDirectory = separator < 0 ? Path.of(".") : Path.of(directoryOrGlob.substring(0, Math.max(1, separator)));
+			pattern = directoryOrGlob.substring(separator + 1);
+		}
+		PathMatcher matcher = globMatcher(pattern);
+		try (Stream<Path> paths = Files.walk(baseDirectory)) {
+			return paths.filter(Files::isRegularFile)
+					.filter(path -> matcher.matches(baseDirectory.relativize(path)))
+					.filter(path -> !path.getFileName().toString().startsWith(RevelationToKeePassConverter.OUTPUT_FILE_PREFIX))
+					.sorted()
+					.map(Path::toFile)
+					.toList();
+		}
+	}
+
+	/**
+	 * @return a matcher for the given glob - where a leading <code>**&#47;</code> also matches no directory at all, as
+	 * a Java glob's <code>**&#47;</code> only matches one or more.
+	 */
+	private static PathMatcher globMatcher(String pattern) {
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		if (!pattern.startsWith(ANY_DIRECTORIES)) {
+			return matcher;
+		}
+		PathMatcher topLevelMatcher = globMatcher(pattern.substring(ANY_DIRECTORIES.length()));
+		return path -> matcher.matches(path) || topLevelMatcher.matches(path);
+	}
+
+	/**
+	 * The outcome of converting a single file - <code>failure</code> is <code>null</code> if it succeeded.
+	 */
+	public record FileResult(File source, File output, long entryCount, Duration elapsed, Throwable failure) {
+
+		public boolean succeeded() {
+			return Objects.isNull(failure);
+		}
+
+		@Override
+		public String toString() {
+			return succeeded()
+					? "%s -> %s: %d entries in %dms".formatted(source, output, entryCount, elapsed.toMillis())
+					: "%s: FAILED in %dms - %s".formatted(source, elapsed.toMillis(), failure.getMessage());
+		}
+	}
+
+	public record Summary(List<FileResult> results, Duration elapsed) {
+
+		public long succeeded() {
+			return results.stream().filter(FileResult::succeeded).count();
+		}
+
+		public long failed() {
+			return results.size() - succeeded();
+		}
+
+		public long entryCount() {
+			return results.stream().mapToLong(FileResult::entryCount).sum();
+		}
+
+		/**
+		 * @return a line per file, followed by the totals.
+		 */
+		public String report() {
+			Duration totalFileTime = results.stream().map(FileResult::elapsed).reduce(Duration.ZERO, Duration::plus);
+			return results.stream().map(FileResult::toString).collect(Collectors.joining("\n", "", "\n"))
+					+ "%d files: %d converted, %d failed; %d entries in %dms (%dms of conversion time)".formatted(
+							results.size(), succeeded(), failed(), entryCount(), elapsed.toMillis(), totalFileTime.toMillis());
+		}
+	}
+}
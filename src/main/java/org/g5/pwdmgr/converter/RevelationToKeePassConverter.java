@@ -1,33 +1,44 @@
 package org.g5.pwdmgr.converter;
 
 import org.apache.commons.lang3.StringUtils;
-import org.g5.util.Streams;
 import org.g5.util.cli.Argument;
 import org.g5.util.cli.Arguments;
 import org.g5.util.cli.CommandLine;
 import org.g5.util.stream.xml.XmlSpliterator;
-import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Text;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.stream.StreamSource;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.StringWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
@@ -40,9 +51,9 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
  * notes field. These will be appended to what notes may already be present in the
  * entry.
  * 
- * KeePass 2 has more extensive custom field and attachment support. But unfortunately
- * I can not yet generate a KeePass 2 XML format. For this reason, the name-value pairs
- * transcribed above may have to be manually moved over to KeePass attributes.
+ * KeePass 2 has more extensive custom field and attachment support - so I can also
+ * generate KeePass 2.x XML, where fields that don't map onto standard KeePass fields
+ * are kept as custom entry strings, and passwords are marked to be protected in memory.
  * 
  * @author gerard.fernandes@gmail.com
  *
@@ -50,6 +61,13 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 public class RevelationToKeePassConverter {
 	
 	private static final Logger log = LoggerFactory.getLogger(RevelationToKeePassConverter.class);
+
+	static final String OUTPUT_FILE_PREFIX = "keepass.export.";
+	//how many entries may be in conversion at once, when entries are converted in parallel
+	private static final int ENTRY_WINDOW = 256;
+	//stateless - shared by every conversion, on every thread
+	private static final Function<Element, Element> kp1ConverterFn = new RevelationToKPConverterFn();
+	private static final Function<Element, Element> kp2ConverterFn = new RevelationToKP2ConverterFn();
 	
 	static void main(String[] args) throws Exception {
 		long start = System.nanoTime();
@@ -60,41 +78,158 @@ public class RevelationToKeePassConverter {
                 System.out.println(argumentParser.help());
                 System.exit(1);
             }
+			Optional<File> output = argumentValue(parsedArgs, "o");
+			KeePassFormat format = RevelationToKeePassConverter.<KeePassFormat>argumentValue(parsedArgs, "k")
+					.orElse(KeePassFormat.KEEPASS_1);
+			Optional<String> batchSources = argumentValue(parsedArgs, "d");
+			if (batchSources.isPresent()) {
+				List<File> revelationFiles = RevelationBatchConverter.resolveSources(batchSources.get());
+				int threads = RevelationToKeePassConverter.<Integer>argumentValue(parsedArgs, "t")
+						.orElse(Runtime.getRuntime().availableProcessors());
+				RevelationBatchConverter.Summary summary = new RevelationBatchConverter(threads, format)
+						.convert(revelationFiles, revelationFile -> outputFileFor(revelationFile, output.orElse(null)));
+				System.out.println(summary.report());
+				return;
+			}
             @SuppressWarnings("unchecked")
 			File revelationFile = ((Argument<File>)parsedArgs.get("f")).value();
-			Element kpRoot = new Element("pwlist");
-			Document kpXml = new Document(kpRoot);
-			XmlSpliterator revelationDataElements = new XmlSpliterator(new StreamSource(revelationFile), "entry");
-			
-			List<Element> kpEntries = Streams.sequential(revelationDataElements)
-										.map(new RevelationToKPConverterFn())
-					                    .collect(Collectors.toList());
-			kpRoot.addContent(kpEntries);
-			StringWriter out = new StringWriter();
-			new XMLOutputter(Format.getPrettyFormat()).output(kpXml, out);
-			System.out.println(out);
-			FileWriter writer = new FileWriter(new File(revelationFile.getParentFile(), "keepass.export." + revelationFile.getName()));
-			new XMLOutputter(Format.getPrettyFormat()).output(kpXml, writer);
+			File outputFile = output.orElseGet(() -> outputFileFor(revelationFile, null));
+			Executor entryExecutor = hasArgument(parsedArgs, "p") ? ForkJoinPool.commonPool() : null;
+			long entryCount = convert(revelationFile, outputFile, format, entryExecutor);
+			log.info("Wrote {} entries to {}.", entryCount, outputFile);
+		} catch (NoSuchElementException e) {
+			System.out.println("Either a file or a directory to convert is required.");
+			System.out.println(argumentParser.help());
 		} catch (IllegalArgumentException e) {
-			argumentParser.help();
+			System.out.println(argumentParser.help());
 		} catch (RuntimeException e) {
 			System.out.println("Failed to run conversion - error was: " + e.getMessage());
-			argumentParser.help();
+			System.out.println(argumentParser.help());
 		} finally {
 			long end = System.nanoTime();
 			log.info("Completed processing in {}ms", (end - start) / 1000000.00);
 		}
 	}
 
+	/**
+	 * @param outputDirectory where to write the output - or <code>null</code> to write it beside the source file.
+	 */
+	private static File outputFileFor(File revelationFile, File outputDirectory) {
+		return new File(Objects.requireNonNullElse(outputDirectory, revelationFile.getAbsoluteFile().getParentFile()),
+				OUTPUT_FILE_PREFIX + revelationFile.getName());
+	}
+
+	/**
+	 * Converts a Revelation XML export to a KeePass XML file, streaming each entry through as it is read - neither
+	 * the source nor the converted document is ever held in memory whole.
+	 * <p>
+	 * The output is written to a temporary file beside it, and only moved into place once every entry has been
+	 * converted - should the conversion fail, no output file is left behind, and any earlier one is left as it was.
+	 *
+	 * @return the number of entries converted.
+	 */
+	static long convert(File revelationFile, File outputFile) throws IOException, XMLStreamException {
+		return convert(revelationFile, outputFile, KeePassFormat.KEEPASS_1, null);
+	}
+
+	/**
+	 * As {@link #convert(File, File)}, to the given format.
+	 *
+	 * @param entryExecutor where entries are converted, in parallel - or <code>null</code> to convert them one by one
+	 *                      as they are read. Either way, entries are written in the order they were read.
+	 */
+	static long convert(File revelationFile, File outputFile, KeePassFormat format, Executor entryExecutor) throws IOException, XMLStreamException {
+		Path outputPath = outputFile.toPath().toAbsolutePath();
+		Path tempOutputPath = Files.createTempFile(outputPath.getParent(), "." + outputPath.getFileName(), ".tmp");
+		try {
+			long entryCount = writeKeePassXml(revelationFile, tempOutputPath, format, entryExecutor);
+			Files.move(tempOutputPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return entryCount;
+		} finally {
+			deleteQuietly(tempOutputPath);
+		}
+	}
+
+	private static long writeKeePassXml(File revelationFile, Path outputPath, KeePassFormat format, Executor entryExecutor) throws IOException, XMLStreamException {
+		Function<Element, Element> converterFn = format == KeePassFormat.KEEPASS_2 ? kp2ConverterFn : kp1ConverterFn;
+		try (InputStream revelationXml = Files.newInputStream(revelationFile.toPath());
+			 KeePassXmlWriter kpWriter = new KeePassXmlWriter(Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8), format)) {
+			XmlSpliterator revelationDataElements = revelationEntries(revelationXml, revelationFile);
+			if (Objects.isNull(entryExecutor)) {
+				while (revelationDataElements.hasNext()) {
+					kpWriter.write(converterFn.apply(revelationDataElements.next()));
+				}
+			} else {
+				//reading stays sequential; conversions run ahead in a bounded window, and are written strictly in order
+				Deque<CompletableFuture<Element>> convertedEntries = new ArrayDeque<>(ENTRY_WINDOW);
+				try {
+					while (revelationDataElements.hasNext()) {
+						Element revelationPwdEntry = revelationDataElements.next();
+						convertedEntries.add(CompletableFuture.supplyAsync(() -> converterFn.apply(revelationPwdEntry), entryExecutor));
+						if (convertedEntries.size() >= ENTRY_WINDOW) {
+							kpWriter.write(convertedEntries.poll().join());
+						}
+					}
+					while (!convertedEntries.isEmpty()) {
+						kpWriter.write(convertedEntries.poll().join());
+					}
+				} finally {
+					//only left non-empty by a failure - the entries still in the window will never be written
+					convertedEntries.forEach(convertedEntry -> convertedEntry.cancel(false));
+				}
+			}
+			kpWriter.complete();
+			return kpWriter.entryCount();
+		}
+	}
+
+	private static void deleteQuietly(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			log.warn("Failed to delete {}.", path, e);
+		}
+	}
+
+	private static XmlSpliterator revelationEntries(InputStream revelationXml, File revelationFile) throws XMLStreamException {
+		return new XmlSpliterator(new StreamSource(revelationXml, revelationFile.toURI().toString()), "entry") {
+			@Override
+			protected void onReadFailure(XMLStreamException e) {
+				//a silently truncated vault is worse than none at all
+				throw new IllegalStateException("Failed to read Revelation export " + revelationFile + "!", e);
+			}
+		};
+	}
+
 	private static CommandLine argParser() {
         return CommandLine.builder()
             .withCommand("RevelationToKeePassConverter")
-            .withDescription("the revelation XML format source file to convert to keepass 1.x format")
+            .withDescription("the revelation XML format source file to convert to keepass 1.x or 2.x XML format")
             //switches
-            .withOption("destinationFile", "-f", "--file", "The output file-name",
-            new InputFileArgument("destinationFile"))
+            .withOption("sourceFile", "f", "file", "The revelation export file-name",
+            new InputFileArgument("sourceFile"))
+            .withOption("destinationFile", "o", "output", "The output file-name - or, in batch mode, directory - defaults to keepass.export.<FILE>, beside the source file",
+            File::new)
+            .withStringArgOption("sourceDirectory", "d", "directory", "Batch mode: a directory of revelation export files, or a (quoted) glob matching them")
+            .withOption("threads", "t", "threads", "Batch mode: how many files to convert at once - defaults to the number of processors",
+            Integer::valueOf)
+            .withOption("format", "k", "keepass", "The KeePass XML format version to convert to - 1 (the default) or 2",
+            KeePassFormat::fromVersion)
+            .withNoArgOption("parallel", "p", "parallel", "Convert the entries of a single file in parallel")
             .build();
 	}
+
+	private static boolean hasArgument(Arguments parsedArgs, String shortOpt) {
+		return parsedArgs.stream().anyMatch(argument -> argument.shortOpt().equals(shortOpt));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Optional<T> argumentValue(Arguments parsedArgs, String shortOpt) {
+		return parsedArgs.stream()
+				.filter(argument -> argument.shortOpt().equals(shortOpt))
+				.findFirst()
+				.map(argument -> (T) argument.value());
+	}
 	
 	private static Element simpleElement(String name, String text) {
 		Element simpleElement = new Element(name);
@@ -168,40 +303,56 @@ public class RevelationToKeePassConverter {
 		return kpField;
 	}
 	
-	@SuppressWarnings("unused")
-	private static Element kp2Entry(Element revelationPwdEntry) {
-		Element kpPwdEntry = new Element("Entry");
-		kpPwdEntry.addContent(simpleElement("Title", revelationPwdEntry.getChildText("name")));
-		Element userNameKPField = kpFieldContent("UserName", "");
-		kpPwdEntry.addContent(userNameKPField);
-		for(Element fieldElement : revelationPwdEntry.getChildren("field")) {
-			String revFieldId = fieldElement.getAttributeValue("id");
-			if (revFieldId.endsWith("username")) {
-				userNameKPField.getChild("Value").setText(fieldElement.getText());
-			} else if (revFieldId.endsWith("password")) {
-				kpPwdEntry.addContent(kpFieldContent("Password", fieldElement.getText(), "ProtectInMemory=True"));
-			} else if (revFieldId.endsWith("url")) {
-				kpPwdEntry.addContent(kpFieldContent("URL", fieldElement.getText()));
-			} else if (revFieldId.endsWith("notes")) {
-				kpPwdEntry.addContent(kpFieldContent("Notes", fieldElement.getText()));
-			} else {
-				kpPwdEntry.addContent(kpFieldContent(revFieldId, fieldElement.getText()));
+	/**
+	 * @return a new, random KeePass 2 UUID - 16 bytes, base64 encoded.
+	 */
+	static String kp2Uuid() {
+		UUID uuid = UUID.randomUUID();
+		return Base64.getEncoder().encodeToString(ByteBuffer.allocate(16)
+				.putLong(uuid.getMostSignificantBits())
+				.putLong(uuid.getLeastSignificantBits())
+				.array());
+	}
+
+	private static final class RevelationToKP2ConverterFn implements Function<Element, Element> {
+
+		@Override
+		public Element apply(Element revelationPwdEntry) {
+			Element kpPwdEntry = new Element("Entry");
+			kpPwdEntry.addContent(simpleElement("UUID", kp2Uuid()));
+			kpPwdEntry.addContent(kpFieldContent("Title", revelationPwdEntry.getChildText("name")));
+			Element userNameKPField = kpFieldContent("UserName", "");
+			kpPwdEntry.addContent(userNameKPField);
+			String notesContent = revelationPwdEntry.getChildText("notes");
+			if (isNotEmpty(notesContent)) {
+				kpPwdEntry.addContent(kpFieldContent("Notes", notesContent));
+			}
+			for(Element fieldElement : revelationPwdEntry.getChildren("field")) {
+				String revFieldId = fieldElement.getAttributeValue("id");
+				if (revFieldId.endsWith("username")) {
+					userNameKPField.getChild("Value").setText(fieldElement.getText());
+				} else if (revFieldId.endsWith("password")) {
+					kpPwdEntry.addContent(kpFieldContent("Password", fieldElement.getText(), "ProtectInMemory=True"));
+				} else if (revFieldId.endsWith("url")) {
+					kpPwdEntry.addContent(kpFieldContent("URL", fieldElement.getText()));
+				} else {
+					kpPwdEntry.addContent(kpFieldContent(revFieldId, fieldElement.getText()));
+				}
 			}
+			ZonedDateTime lastUpdated = Instant.ofEpochSecond(Long.parseLong(revelationPwdEntry.getChildText("updated")))
+					.atZone(ZoneId.systemDefault());
+			String lastUpdatedTimestampISOFormat = lastUpdated.format(DateTimeFormatter.ISO_INSTANT);
+			String nowISOFormat = ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT);
+			Element timesElement = new Element("Times");
+			timesElement.addContent(simpleElement("CreationTime", lastUpdatedTimestampISOFormat));
+			timesElement.addContent(simpleElement("LastModificationTime", lastUpdatedTimestampISOFormat));
+			timesElement.addContent(simpleElement("LastAccessTime", nowISOFormat));
+			timesElement.addContent(simpleElement("ExpiryTime", nowISOFormat));
+			timesElement.addContent(simpleElement("Expires", "False"));
+			timesElement.addContent(simpleElement("UsageCount", "1"));
+			kpPwdEntry.addContent(timesElement);
+			return kpPwdEntry;
 		}
-		LocalDateTime lastUpdated = LocalDateTime.ofInstant(
-				new Date(Long.parseLong(revelationPwdEntry.getChildText("updated")) * 1000).toInstant(),
-				ZoneId.systemDefault());
-		String lastUpdatedTimestampISOFormat = lastUpdated.atZone(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_INSTANT);
-		String nowISOFormat = LocalDateTime.now().atZone(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_INSTANT);
-		Element timesElement = new Element("Times");
-		timesElement.addContent(simpleElement("CreationTime", lastUpdatedTimestampISOFormat));
-		timesElement.addContent(simpleElement("LastModificationTime", lastUpdatedTimestampISOFormat));
-		timesElement.addContent(simpleElement("LastAccessTime", nowISOFormat));
-		timesElement.addContent(simpleElement("ExpiryTime", nowISOFormat));
-		timesElement.addContent(simpleElement("Expires", "false"));
-		timesElement.addContent(simpleElement("UsageCount", "1"));
-		kpPwdEntry.addContent(timesElement);
-		return kpPwdEntry;
 	}
 	
 	private static final class InputFileArgument implements Function<String, File> {
@@ -0,0 +1,331 @@
+package org.g5.util.stream.json;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.async.ByteArrayFeeder;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * I am the non-blocking sibling of {@link JsonSpliterator}. I am fed chunks of bytes as they arrive - typically from an
+ * {@link java.net.http.HttpClient HttpClient} response through {@link #bodyHandler()} - and publish the data items of
+ * interest to a single downstream {@link Flow.Subscriber subscriber}, as soon as each one is complete.
+ * <p>
+ * I never block a thread waiting for input. I parse with Jackson's non-blocking parser, and only request more bytes
+ * from upstream once the rows already parsed have been requested by downstream - so back-pressure flows all the way
+ * back to the socket, and memory use stays bounded by one chunk's worth of rows.
+ * <p>
+ * Like {@link JsonSpliterator}, I locate the list of interest by name (or expect a root array when no name is given),
+ * and collect metadata around it into the caller supplied {@link Map map}. Metadata is complete once downstream has
+ * been signalled {@link Flow.Subscriber#onComplete() completion}.
+ * <p>
+ * I am single use: one response, one downstream subscriber.
+ */
+public class AsyncJsonSpliterator implements Flow.Processor<List<ByteBuffer>, JsonNode> {
+
+    private enum Phase { SEEKING_LIST, IN_LIST, AFTER_LIST }
+
+    private final String rootListNodeName;
+    private final JsonMapper jsonMapper;
+    private final JsonParser jsonParser;
+    private final ByteArrayFeeder inputFeeder;
+    private final Map<String, Object> metadata;
+    private final boolean hasMetadata;
+    private final JsonTreeAssembler rowAssembler;
+    private final JsonTreeAssembler metadataAssembler;
+
+    //parser state - only ever touched from upstream signals, which are serialised by contract
+    private Phase phase = Phase.SEEKING_LIST;
+    private boolean atRootList;
+    private String metadataName;
+
+    //hand-off state between upstream and downstream
+    private final Queue<JsonNode> parsedRows = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicBoolean upstreamRequested = new AtomicBoolean();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super JsonNode> downstream;
+    private volatile boolean upstreamDone;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private boolean terminated;
+
+    public AsyncJsonSpliterator(JsonMapper jsonMapper) {
+        this(null, jsonMapper);
+    }
+
+    public AsyncJsonSpliterator(String rootListNodeName, JsonMapper jsonMapper) {
+        this(rootListNodeName, jsonMapper, Collections.emptyMap(), false);
+    }
+
+    public AsyncJsonSpliterator(String rootListNodeName, JsonMapper jsonMapper,
+                                Map<String, Object> metadata, boolean hasMetadata) {
+        this.rootListNodeName = rootListNodeName;
+        this.jsonMapper = jsonMapper;
+        this.jsonParser = jsonMapper.createNonBlockingByteArrayParser();
+        this.inputFeeder = (ByteArrayFeeder) jsonParser.nonBlockingInputFeeder();
+        this.metadata = metadata;
+        this.hasMetadata = hasMetadata;
+        this.rowAssembler = new JsonTreeAssembler(jsonMapper);
+        this.metadataAssembler = new JsonTreeAssembler(jsonMapper);
+    }
+
+    /**
+     * @return a body handler that feeds an {@link java.net.http.HttpClient HttpClient} response body to me.
+     * As I am single use, so is the handler.
+     */
+    public HttpResponse.BodyHandler<Void> bodyHandler() {
+        return responseInfo -> HttpResponse.BodySubscribers.fromSubscriber(this);
+    }
+
+    // ---- Publisher - downstream side ----
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super JsonNode> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("I only support a single subscriber!"));
+            return;
+        }
+        this.downstream = subscriber;
+        subscriber.onSubscribe(new RowSubscription());
+        drain();
+    }
+
+    private final class RowSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Non-positive request: " + n);
+                cancelUpstream();
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            cancelUpstream();
+        }
+    }
+
+    // ---- Subscriber - upstream side ----
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (Objects.nonNull(upstream)) {
+            subscription.cancel();
+            return;
+        }
+        this.upstream = subscription;
+        if (cancelled) {
+            subscription.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> chunks) {
+        if (!upstreamDone) {
+            try {
+                for (ByteBuffer chunk : chunks) {
+                    feed(chunk);
+                    parseAvailableTokens();
+                }
+            } catch (JacksonException | IllegalStateException e) {
+                fail(e);
+            }
+        }
+        //only once this chunk is parsed - a drain seeing no rows while it is being parsed must not request another
+        upstreamRequested.set(false);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (!upstreamDone) {
+            failure = throwable;
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        if (!upstreamDone) {
+            try {
+                inputFeeder.endOfInput();
+                parseAvailableTokens();
+            } catch (JacksonException | IllegalStateException e) {
+                failure = new IllegalStateException("Failed reading - broken JSON stream?", e);
+            }
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    // ---- parsing ----
+
+    private void feed(ByteBuffer chunk) {
+        if (chunk.hasArray()) {
+            int start = chunk.arrayOffset() + chunk.position();
+            inputFeeder.feedInput(chunk.array(), start, start + chunk.remaining());
+        } else {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            inputFeeder.feedInput(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Reads every token the parser can complete from the input fed so far. The parser keeps no reference to the
+     * fed bytes once this returns, as it will have asked for more input.
+     */
+    private void parseAvailableTokens() {
+        for (JsonToken token = jsonParser.nextToken();
+             Objects.nonNull(token) && token != JsonToken.NOT_AVAILABLE;
+             token = jsonParser.nextToken()) {
+            switch (phase) {
+                case SEEKING_LIST -> seekList(token);
+                case IN_LIST -> readRow(token);
+                case AFTER_LIST -> readMetadata(token);
+            }
+        }
+    }
+
+    private void seekList(JsonToken token) {
+        if (isEmpty(rootListNodeName)) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Can't parse this input! Does not start with an array!");
+            }
+            phase = Phase.IN_LIST;
+        } else if (atRootList && !metadataAssembler.isAssembling()) {
+            atRootList = false;
+            if (token == JsonToken.START_ARRAY) {
+                phase = Phase.IN_LIST;
+            }
+        } else if (token == JsonToken.PROPERTY_NAME && rootListNodeName.equals(jsonParser.currentName())
+                && !metadataAssembler.isAssembling()) {
+            atRootList = true;
+        } else {
+            readMetadata(token);
+        }
+    }
+
+    private void readRow(JsonToken token) {
+        if (!rowAssembler.isAssembling() && token == JsonToken.END_ARRAY) {//we're done reading the list of interesting nodes...
+            phase = Phase.AFTER_LIST;
+        } else if (rowAssembler.accept(token, jsonParser)) {
+            parsedRows.add(rowAssembler.take());
+        }
+    }
+
+    /**
+     * Reads metadata around the list of interesting data items - with the same rules as {@link JsonSpliterator}:
+     * scalar and array valued properties are collected by name, object valued properties are descended into.
+     */
+    private void readMetadata(JsonToken token) {
+        if (!hasMetadata) {
+            return;
+        }
+        if (metadataAssembler.isAssembling()) {
+            if (metadataAssembler.accept(token, jsonParser)) {
+                metadata.put(metadataName, jsonMapper.treeToValue(metadataAssembler.take(), List.class));
+                metadataName = null;
+            }
+        } else if (token == JsonToken.PROPERTY_NAME) {
+            metadataName = jsonParser.currentName();
+        } else if (Objects.nonNull(metadataName)) {
+            switch (token) {
+                case START_ARRAY -> metadataAssembler.accept(token, jsonParser);
+                case START_OBJECT, VALUE_NULL -> metadataName = null;
+                case VALUE_TRUE, VALUE_FALSE -> putMetadata(jsonParser.getBooleanValue());
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> putMetadata(jsonParser.getNumberValue());
+                default -> putMetadata(jsonParser.getValueAsString());
+            }
+        }
+    }
+
+    private void putMetadata(Object value) {
+        if (Objects.nonNull(value)) {
+            metadata.put(metadataName, value);
+        }
+        metadataName = null;
+    }
+
+    private void fail(Exception e) {
+        failure = new IllegalStateException("Failed reading - broken JSON stream?", e);
+        upstreamDone = true;
+        cancelUpstream();
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription subscription = upstream;
+        if (Objects.nonNull(subscription)) {
+            subscription.cancel();
+        }
+    }
+
+    // ---- hand-off ----
+
+    /**
+     * Delivers parsed rows downstream, as far as demand allows, and asks upstream for more bytes once the parsed rows
+     * run out. Only one thread drains at a time; concurrent calls are folded into another pass by the draining thread.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super JsonNode> subscriber = downstream;
+            if (Objects.nonNull(subscriber) && !terminated) {
+                for (; demand.get() > 0 && !parsedRows.isEmpty() && !cancelled; demand.decrementAndGet()) {
+                    subscriber.onNext(parsedRows.poll());
+                }
+                if (cancelled) {
+                    terminated = true;
+                    parsedRows.clear();
+                } else if (Objects.nonNull(failure)) {
+                    terminated = true;
+                    parsedRows.clear();
+                    subscriber.onError(failure);
+                } else if (parsedRows.isEmpty() && upstreamDone) {
+                    terminated = true;
+                    subscriber.onComplete();
+                } else if (parsedRows.isEmpty() && demand.get() > 0 && Objects.nonNull(upstream)
+                        && upstreamRequested.compareAndSet(false, true)) {
+                    upstream.request(1);
+                }
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private static boolean isEmpty(String input) {
+        return Objects.isNull(input) || input.isBlank();
+    }
+}
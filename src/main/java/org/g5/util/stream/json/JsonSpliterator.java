@@ -2,19 +2,27 @@ package org.g5.util.stream.json;
 
 import tools.jackson.core.JsonParser;
 import tools.jackson.core.JsonToken;
+import tools.jackson.core.TokenStreamContext;
 import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ObjectMapper;
 import tools.jackson.databind.json.JsonMapper;
-import tools.jackson.databind.node.NullNode;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -25,15 +33,53 @@ import java.util.stream.StreamSupport;
  * a very small memory footprint.
  * Performance is typically more than reasonable, as the bottle next is usually the underlying {@link InputStream input-stream}
  * which is usually remote, although performance is good even for data source from local file.
+ * <p>
+ * Metadata around the list of interest is collected into the caller supplied {@link Map map} as it is read. Each
+ * {@link MetadataSection section} of it can also be awaited through {@link #metadata(MetadataSection)}, which completes
+ * as soon as that section has been parsed. Where only the metadata is of interest, {@link #scanMetadata} skips over
+ * the list contents without building any nodes.
+ * <p>
+ * Over a seekable source I can also offer {@link #checkpoint() checkpoints} - {@link ResumeToken resume-tokens}
+ * recording where the next item starts. A failed ingest can then be {@link #resume resumed} from the last checkpoint,
+ * rather than restarted from the beginning.
  */
 public class JsonSpliterator implements Iterable<JsonNode> {
 
+    /**
+     * The sections of metadata around the list of interesting data items.
+     */
+    public enum MetadataSection {
+        /** Metadata preceding the list - complete once iteration has been positioned at the first item. */
+        BEFORE_LIST,
+        /** All metadata, including that following the list - complete once iteration reaches the end of the list. */
+        AFTER_LIST
+    }
+
+    /**
+     * I record the point, in a byte-oriented source, from which reading can be resumed: the byte offset of the next
+     * unread item, the JSON structure enclosing it, and the metadata collected so far.
+     * Treat me as opaque - persist me (I bind with a {@link JsonMapper}), and hand me back to
+     * {@link #resume(ResumeToken, JsonMapper, Map, SeekableByteChannel) resume}.
+     */
+    public record ResumeToken(String rootListNodeName, long byteOffset, long rowsRead, String enclosingStructure,
+                              boolean hasMetadata, Map<String, Object> metadata) {}
+
     private final String rootListNodeName;
+    private final JsonMapper jsonMapper;
     private final JsonParser jsonParser;
     private final Map<String, Object> metadata;
     private final boolean hasMetadata;
+    private final CompletableFuture<Map<String, Object>> metadataBeforeList = new CompletableFuture<>();
+    private final CompletableFuture<Map<String, Object>> metadataAfterList = new CompletableFuture<>();
 
     private JsonNode currentNode;
+    //checkpointing state - the absolute offset of the parser's first byte, and of the current node
+    private long baseOffset;
+    private long currentNodeOffset = -1;
+    private long rowsRead;
+    private String enclosingStructure;
+    private long checkpointInterval;
+    private Consumer<ResumeToken> checkpointConsumer;
 
     public static JsonSpliterator emptySpliterator(JsonMapper jsonParser) {
         return new JsonSpliterator(jsonParser, InputStream.nullInputStream());
@@ -51,11 +97,98 @@ public class JsonSpliterator implements Iterable<JsonNode> {
                            Map<String, Object> metadata, boolean hasMetadata,
                            InputStream inputStream) {
         this.rootListNodeName = rootListNodeName;
+        this.jsonMapper = jsonParser;
         this.jsonParser = jsonParser.createParser(inputStream);
         this.metadata = metadata;
         this.hasMetadata = hasMetadata;
     }
 
+    /**
+     * Resumes reading from a checkpoint. The channel must be over the same source the token was taken from; it is
+     * positioned at the token's offset, and the metadata recorded in the token is restored into the given map.
+     *
+     * @param resumeToken the {@link #checkpoint() checkpoint} to resume from.
+     * @return a spliterator whose first item is the item following the checkpoint.
+     * @throws IOException if the channel can not be positioned.
+     */
+    public static JsonSpliterator resume(ResumeToken resumeToken, JsonMapper jsonParser,
+                                         Map<String, Object> metadata, SeekableByteChannel channel) throws IOException {
+        channel.position(resumeToken.byteOffset());
+        metadata.putAll(resumeToken.metadata());
+        //re-open the enclosing structure, so the remainder of the source parses as if read from the start
+        byte[] enclosingStructure = resumeToken.enclosingStructure().getBytes(StandardCharsets.UTF_8);
+        JsonSpliterator resumed = new JsonSpliterator(resumeToken.rootListNodeName(), jsonParser,
+                metadata, resumeToken.hasMetadata(),
+                new SequenceInputStream(new ByteArrayInputStream(enclosingStructure), Channels.newInputStream(channel)));
+        resumed.baseOffset = resumeToken.byteOffset() - enclosingStructure.length;
+        resumed.rowsRead = resumeToken.rowsRead();
+        return resumed;
+    }
+
+    /**
+     * Registers a consumer for {@link #checkpoint() checkpoints}, offered after every given number of items read.
+     *
+     * @return me, for chaining.
+     */
+    public JsonSpliterator checkpointEvery(long rows, Consumer<ResumeToken> checkpointConsumer) {
+        if (rows <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive! Got: " + rows);
+        }
+        this.checkpointInterval = rows;
+        this.checkpointConsumer = Objects.requireNonNull(checkpointConsumer);
+        return this;
+    }
+
+    /**
+     * @return a token from which reading can be {@link #resume resumed} at the next unread item - or empty if there
+     * are no more items, or the position of the next item is not known (the source is not byte-oriented, or no item
+     * has been read yet).
+     */
+    public Optional<ResumeToken> checkpoint() {
+        if (Objects.isNull(currentNode) || currentNodeOffset < 0 || Objects.isNull(enclosingStructure)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResumeToken(rootListNodeName, currentNodeOffset, rowsRead, enclosingStructure,
+                hasMetadata, Collections.unmodifiableMap(new LinkedHashMap<>(metadata))));
+    }
+
+    /**
+     * Reads only the metadata around the list of interest. The list contents are skipped over token by token, without
+     * building any nodes - so a total row count, say, can be read up front without the cost of parsing every row.
+     *
+     * @return the metadata found either side of the list.
+     */
+    public static Map<String, Object> scanMetadata(String rootListNodeName, JsonMapper jsonParser, InputStream inputStream) {
+        JsonSpliterator metadataScanner = new JsonSpliterator(rootListNodeName, jsonParser, new LinkedHashMap<>(), true, inputStream);
+        metadataScanner.new NodeIterator().skipRemainingNodes();
+        return metadataScanner.metadata;
+    }
+
+    /**
+     * As {@link #scanMetadata(String, JsonMapper, InputStream)}, with the metadata bound to the given type.
+     */
+    public static <T> T scanMetadata(String rootListNodeName, JsonMapper jsonParser, InputStream inputStream, Class<T> type) {
+        return jsonParser.convertValue(scanMetadata(rootListNodeName, jsonParser, inputStream), type);
+    }
+
+    /**
+     * @return a future completed with a snapshot of the metadata, as soon as the given section has been read. The
+     * future is only completed as iteration progresses.
+     */
+    public CompletableFuture<Map<String, Object>> metadata(MetadataSection section) {
+        return switch (section) {
+            case BEFORE_LIST -> metadataBeforeList;
+            case AFTER_LIST -> metadataAfterList;
+        };
+    }
+
+    /**
+     * As {@link #metadata(MetadataSection)}, with the metadata bound to the given type.
+     */
+    public <T> CompletableFuture<T> metadata(MetadataSection section, Class<T> type) {
+        return metadata(section).thenApply(sectionMetadata -> jsonMapper.convertValue(sectionMetadata, type));
+    }
+
     public Stream<JsonNode> stream() {
         return StreamSupport.stream(spliterator(), false);
     }
@@ -86,6 +219,10 @@ public class JsonSpliterator implements Iterable<JsonNode> {
         public JsonNode next() {
             JsonNode next = Optional.ofNullable(currentNode).orElseThrow();
             currentNode = nextNode().orElse(null); //move to next node..
+            rowsRead++;
+            if (Objects.nonNull(checkpointConsumer) && rowsRead % checkpointInterval == 0) {
+                checkpoint().ifPresent(checkpointConsumer);
+            }
             return next;
         }
 
@@ -97,23 +234,50 @@ public class JsonSpliterator implements Iterable<JsonNode> {
             try {
                 JsonToken nextToken = jsonParser.nextToken();
                 if(Objects.isNull(nextToken) || jsonParser.isClosed()) {
+                    completeMetadata(metadataAfterList);
                     return Optional.empty();
                 }
                 if (nextToken == JsonToken.END_ARRAY) {//we're done reading the list of interesting nodes...
-                    JsonNode next = NullNode.instance;
-                    for (nextToken = jsonParser.nextToken();
-                         Objects.nonNull(nextToken) && nextToken != JsonToken.END_OBJECT;
-                         nextToken = jsonParser.nextToken()) {
-                        readMetadata();
-                    }
-                    return next instanceof NullNode ? Optional.empty() : Optional.ofNullable(next);
+                    readMetadataAfterList();
+                    return Optional.empty();
                 } else if (nextToken == JsonToken.END_OBJECT) {
+                    completeMetadata(metadataAfterList);
                     return Optional.empty();
                 }
+                //the first item is entered before it's read, so only an item's opening token marks where it starts
+                currentNodeOffset = nextToken == JsonToken.PROPERTY_NAME ? -1 : absoluteOffset(jsonParser.currentTokenLocation().getByteOffset());
                 return Optional.ofNullable(jsonParser.readValueAsTree());
-            } catch (IOException ioe) {
-                throw new IllegalStateException("Failed reading - broken JSON stream?", ioe);
+            } catch (IOException | RuntimeException e) {
+                failMetadata(e);
+                throw new IllegalStateException("Failed reading - broken JSON stream?", e);
+            }
+        }
+
+        /**
+         * Skips over every remaining item in the list of interest - without building nodes - and reads the metadata
+         * following it.
+         */
+        private void skipRemainingNodes() {
+            try {
+                //we're positioned at the first item in the list, or the end of the list if it's empty
+                JsonToken token = jsonParser.currentToken();
+                for (; Objects.nonNull(token) && token != JsonToken.END_ARRAY; token = jsonParser.nextToken()) {
+                    jsonParser.skipChildren();
+                }
+                readMetadataAfterList();
+            } catch (IOException | RuntimeException e) {
+                failMetadata(e);
+                throw new IllegalStateException("Failed reading - broken JSON stream?", e);
+            }
+        }
+
+        private void readMetadataAfterList() throws IOException {
+            for (JsonToken nextToken = jsonParser.nextToken();
+                 Objects.nonNull(nextToken) && nextToken != JsonToken.END_OBJECT;
+                 nextToken = jsonParser.nextToken()) {
+                readMetadata();
             }
+            completeMetadata(metadataAfterList);
         }
 
         /**
@@ -134,6 +298,7 @@ public class JsonSpliterator implements Iterable<JsonNode> {
                     if (rootListNodeName.equals(jsonParser.currentName())) {
                         JsonToken next = jsonParser.nextToken();
                         if (next == JsonToken.START_ARRAY) {
+                            enclosingStructure = describeEnclosingStructure(jsonParser.streamReadContext());
                             jsonParser.nextToken();//we should now be at the first object in the list of interest...
                         }
                     }
@@ -145,8 +310,11 @@ public class JsonSpliterator implements Iterable<JsonNode> {
                     if (jsonParser.currentToken() != JsonToken.START_ARRAY && jsonParser.nextToken() == JsonToken.START_ARRAY) {
                         jsonParser.nextToken();
                     }
+                    enclosingStructure = "[";
                 }
+                completeMetadata(metadataBeforeList);
             } catch (IOException ioe) {
+                failMetadata(ioe);
                 throw new IllegalArgumentException("Failed to initialise reading JSON stream! Caused by: " + ioe.getMessage() + ".", ioe);
             }
         }
@@ -176,6 +344,35 @@ public class JsonSpliterator implements Iterable<JsonNode> {
         }
     }
 
+    private long absoluteOffset(long parserByteOffset) {
+        return parserByteOffset < 0 ? -1 : baseOffset + parserByteOffset;
+    }
+
+    /**
+     * Describes, as the JSON text that opens them, the containers enclosing - and including - the list of interest.
+     * For example, <code>{"result":{"data":[</code>.
+     */
+    private String describeEnclosingStructure(TokenStreamContext listContext) {
+        StringBuilder structure = new StringBuilder();
+        for (TokenStreamContext context = listContext; Objects.nonNull(context) && !context.inRoot(); context = context.getParent()) {
+            if (context.inArray()) {
+                structure.insert(0, '[');
+            } else {
+                structure.insert(0, '{' + jsonMapper.writeValueAsString(context.currentName()) + ':');
+            }
+        }
+        return structure.toString();
+    }
+
+    private void completeMetadata(CompletableFuture<Map<String, Object>> section) {
+        section.complete(Collections.unmodifiableMap(new LinkedHashMap<>(metadata)));
+    }
+
+    private void failMetadata(Throwable cause) {
+        metadataBeforeList.completeExceptionally(cause);
+        metadataAfterList.completeExceptionally(cause);
+    }
+
     private static boolean isEmpty(String input) {
         return Objects.isNull(input) || input.isBlank();
     }
@@ -0,0 +1,135 @@
+package org.g5.util.stream.json;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ContainerNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * I assemble a {@link JsonNode JSON-node} one token at a time. I exist for parsers that can not read a whole value
+ * in one go - such as non-blocking parsers, which may run out of input part-way through a value.
+ * <p>
+ * Feed me the token that starts a value, and every token after it, until I report the value as complete.
+ * I am then ready to assemble the next value.
+ */
+final class JsonTreeAssembler {
+
+    private final ObjectMapper jsonMapper;
+    private final Deque<ContainerNode<?>> containers = new ArrayDeque<>();
+    private String propertyName;
+    private JsonNode completed;
+
+    JsonTreeAssembler(ObjectMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * @return <code>true</code> if I am part-way through assembling a value.
+     */
+    boolean isAssembling() {
+        return !containers.isEmpty();
+    }
+
+    /**
+     * Accepts the parser's current token.
+     *
+     * @return <code>true</code> if the token completed a value - which is then available through {@link #take()}.
+     */
+    boolean accept(JsonToken token, JsonParser parser) {
+        switch (token) {
+            case PROPERTY_NAME -> propertyName = parser.currentName();
+            case START_OBJECT -> containers.push(attach(jsonMapper.createObjectNode()));
+            case START_ARRAY -> containers.push(attach(jsonMapper.createArrayNode()));
+            case END_OBJECT, END_ARRAY -> {
+                ContainerNode<?> container = containers.pop();
+                if (containers.isEmpty()) {
+                    completed = container;
+                    return true;
+                }
+            }
+            default -> {
+                if (containers.isEmpty()) {//a scalar value in its own right - hold it in a throw-away array to build the node
+                    ArrayNode holder = jsonMapper.createArrayNode();
+                    addScalar(holder, token, parser);
+                    completed = holder.get(0);
+                    return true;
+                }
+                ContainerNode<?> container = containers.peek();
+                if (container instanceof ObjectNode objectNode) {
+                    putScalar(objectNode, token, parser);
+                } else {
+                    addScalar((ArrayNode) container, token, parser);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the last completed value - and resets me ready for the next.
+     */
+    JsonNode take() {
+        JsonNode value = completed;
+        completed = null;
+        propertyName = null;
+        return value;
+    }
+
+    private ContainerNode<?> attach(ContainerNode<?> node) {
+        ContainerNode<?> parent = containers.peek();
+        if (parent instanceof ObjectNode objectNode) {
+            objectNode.set(propertyName, node);
+        } else if (parent instanceof ArrayNode arrayNode) {
+            arrayNode.add(node);
+        }
+        return node;
+    }
+
+    private void putScalar(ObjectNode node, JsonToken token, JsonParser parser) {
+        switch (token) {
+            case VALUE_STRING -> node.put(propertyName, parser.getValueAsString());
+            case VALUE_TRUE, VALUE_FALSE -> node.put(propertyName, parser.getBooleanValue());
+            case VALUE_NUMBER_INT -> {
+                switch (parser.getNumberType()) {
+                    case INT -> node.put(propertyName, parser.getIntValue());
+                    case LONG -> node.put(propertyName, parser.getLongValue());
+                    default -> node.put(propertyName, parser.getBigIntegerValue());
+                }
+            }
+            case VALUE_NUMBER_FLOAT -> {
+                switch (parser.getNumberType()) {
+                    case BIG_DECIMAL -> node.put(propertyName, parser.getDecimalValue());
+                    default -> node.put(propertyName, parser.getDoubleValue());
+                }
+            }
+            default -> node.putNull(propertyName);
+        }
+    }
+
+    private static void addScalar(ArrayNode node, JsonToken token, JsonParser parser) {
+        switch (token) {
+            case VALUE_STRING -> node.add(parser.getValueAsString());
+            case VALUE_TRUE, VALUE_FALSE -> node.add(parser.getBooleanValue());
+            case VALUE_NUMBER_INT -> {
+                switch (parser.getNumberType()) {
+                    case INT -> node.add(parser.getIntValue());
+                    case LONG -> node.add(parser.getLongValue());
+                    default -> node.add(parser.getBigIntegerValue());
+                }
+            }
+            case VALUE_NUMBER_FLOAT -> {
+                switch (parser.getNumberType()) {
+                    case BIG_DECIMAL -> node.add(parser.getDecimalValue());
+                    default -> node.add(parser.getDoubleValue());
+                }
+            }
+            default -> node.addNull();
+        }
+    }
+}
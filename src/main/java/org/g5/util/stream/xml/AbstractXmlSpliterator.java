@@ -0,0 +1,178 @@
+package org.g5.util.stream.xml;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * I hold the StAX cursor logic shared by the XML spliterators: I walk a large XML document, and hand each element
+ * matching one of my {@link ElementSelector split selectors} to my subclass to {@link #extract(XMLStreamReader) extract} - as a JDOM2 element,
+ * a bound object, or whatever else the subclass chooses. Every other event - elements, text, comments and so on - is
+ * passed to the {@link XmlEventHandler event handler}, if one is registered.
+ * <p>
+ * Extracted items are lazily offered for consumption through either my {@link Iterator iterator} or
+ * {@link Iterable iterable} interfaces.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ *
+ * @param <T> the type of item extracted from each split element.
+ */
+public abstract class AbstractXmlSpliterator<T> implements Iterator<T>, Iterable<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractXmlSpliterator.class);
+
+    private final XMLStreamReader xmlStreamReader;
+    private final ElementSelector[] splitSelectors;
+    //We need this to track whole element sections. When an element is fully processed - i.e. it's end-element tag is reached - we
+    //pop it off the stack. This also tells us when we've hit the effective end of the document - i.e. we've hit the root element end-tag.
+    //At this point, the stack will be empty.
+    private final ElementStack elementStack = new ElementStack();
+    //null when none is registered - skipped events are then not described at all
+    private final XmlEventHandler eventHandler;
+    private final XmlEventView eventView;
+    private boolean documentEnded;
+    //temporal cached item - the hasNext() call must find a matching element to be able to handle empty documents
+    private Optional<T> selectedItem = Optional.empty();
+
+    protected AbstractXmlSpliterator(XMLStreamReader xmlStreamReader, String splitOnElementName, XmlEventHandler eventHandler) {
+        this(xmlStreamReader, List.of(ElementSelector.parse(splitOnElementName)), eventHandler);
+    }
+
+    protected AbstractXmlSpliterator(XMLStreamReader xmlStreamReader, Collection<ElementSelector> splitSelectors, XmlEventHandler eventHandler) {
+        this.xmlStreamReader = xmlStreamReader;
+        Validate.isTrue(!splitSelectors.isEmpty(), "No split element name specified! Can not continue!");
+        this.splitSelectors = splitSelectors.toArray(new ElementSelector[0]);
+        this.eventHandler = eventHandler;
+        this.eventView = new XmlEventView(xmlStreamReader);
+    }
+
+    /**
+     * Extracts an item from the selected element. I am called with the reader positioned on the element's start tag,
+     * and must consume the whole element - leaving the reader positioned on the event <i>following</i> the element's
+     * end tag.
+     *
+     * @param xmlStreamReader the reader, positioned on the selected element's start tag.
+     * @return the extracted item.
+     * @throws XMLStreamException if the element can not be read.
+     */
+    protected abstract T extract(XMLStreamReader xmlStreamReader) throws XMLStreamException;
+
+    @Override
+    public boolean hasNext() {
+        if (selectedItem.isEmpty()) {
+            selectedItem = Optional.ofNullable(findNextItem());
+        }
+        return selectedItem.isPresent();
+    }
+
+    @Override
+    public T next() {
+        if (hasNext()) {
+            //the item is extracted fresh for each match and never referenced again here, so hand it over as is
+            T next = selectedItem.get();
+            selectedItem = Optional.empty();
+            return next;
+        }
+        throw new IllegalStateException("No more elements available! Empty document, or end of stream reached.");
+    }
+
+    private T findNextItem() {
+        try {
+            for (; xmlStreamReader.hasNext(); xmlStreamReader.next()) {
+                switch (xmlStreamReader.getEventType()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        String localName = xmlStreamReader.getLocalName();
+                        elementStack.push(xmlStreamReader.getNamespaceURI(), localName);
+                        log.trace("Pushed element[{}]", localName);
+                        if (isSelected()) {//selected element - extract and return
+                            log.trace("Processed and popping element[{}]", localName);
+                            T item = extract(xmlStreamReader);
+                            //we're done processing this element, and we won't hit it's end tag as thats been consumed by the extraction above, so pop it
+                            elementStack.pop();
+                            return item;
+                        } else if (Objects.nonNull(eventHandler)) {//rejected element - pass to the event handler, if any
+                            eventHandler.startElement(eventView);
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> popOnEndElement();
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (Objects.nonNull(eventHandler)) eventHandler.characters(eventView);
+                    }
+                    case XMLStreamConstants.COMMENT -> {
+                        if (Objects.nonNull(eventHandler)) eventHandler.comment(eventView);
+                    }
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        if (Objects.nonNull(eventHandler)) eventHandler.processingInstruction(eventView);
+                    }
+                    case XMLStreamConstants.START_DOCUMENT -> {
+                        if (Objects.nonNull(eventHandler)) eventHandler.startDocument(eventView);
+                    }
+                    default -> { }
+                }
+            }
+            endDocument();
+        } catch (XMLStreamException e) {
+            onReadFailure(e);
+        }
+        log.info("No more elements - end of stream reached!");
+        return null;
+    }
+
+    private void popOnEndElement() throws XMLStreamException {
+        String localName = xmlStreamReader.getLocalName();
+        //an end tag not matching the innermost open element can only belong to an element opened before we started reading
+        if (ElementStack.sameName(localName, elementStack.peekLocalName())) {
+            elementStack.pop();
+            log.trace("Popped element[{}]", localName);
+        }
+        if (Objects.nonNull(eventHandler)) {
+            eventHandler.endElement(eventView);
+        }
+    }
+
+    private void endDocument() throws XMLStreamException {
+        //the reader never moves past the end of the document, so it is reported only the first time it is reached
+        if (!documentEnded) {
+            documentEnded = true;
+            if (Objects.nonNull(eventHandler)) {
+                eventHandler.endDocument();
+            }
+        }
+    }
+
+    /**
+     * Called when the stream can not be read any further. By default the failure is logged, and iteration simply
+     * ends - subclasses that must not lose items silently may throw instead.
+     */
+    protected void onReadFailure(XMLStreamException e) {
+        log.error("Failed to retrieve next element from stream.", e);
+    }
+
+    private boolean isSelected() {
+        for (ElementSelector splitSelector : splitSelectors) {
+            if (splitSelector.matches(elementStack)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+}
@@ -0,0 +1,142 @@
+package org.g5.util.stream.xml;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+
+/**
+ * I select the elements an XML spliterator splits on. I am {@link #parse(String) parsed} from one of:<ul>
+ * <li><code>OTCTrade</code> - a local name, matched at any depth and in any namespace.</li>
+ * <li><code>{urn:trades}OTCTrade</code> - a qualified name, matched at any depth. <code>{}OTCTrade</code> matches
+ * only elements in no namespace.</li>
+ * <li><code>/trades/OTCTrade</code> - an absolute path, matched only at exactly that position from the root.</li>
+ * <li><code>trades/OTCTrade</code> - a relative path, matched wherever the innermost elements line up with it.</li>
+ * </ul>
+ * Path steps may themselves be qualified names, or <code>*</code> to match any element.
+ * <p>
+ * I match against the {@link ElementStack stack} of open elements, so matching allocates nothing. My names are interned,
+ * so against the interned names StAX parsers hand out, they usually match by reference.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ */
+public final class ElementSelector {
+
+    private static final String ANY = "*";
+
+    private final String expression;
+    private final boolean absolute;
+    //per step: the namespace to match (null matches any), and the local name to match (null matches any)
+    private final String[] namespaces;
+    private final String[] localNames;
+
+    private ElementSelector(String expression, boolean absolute, String[] namespaces, String[] localNames) {
+        this.expression = expression;
+        this.absolute = absolute;
+        this.namespaces = namespaces;
+        this.localNames = localNames;
+    }
+
+    public static ElementSelector parse(String expression) {
+        Validate.isTrue(isNotEmpty(expression), "No split element name specified! Can not continue!");
+        boolean absolute = expression.startsWith("/");
+        List<String> steps = splitSteps(absolute ? expression.substring(1) : expression);
+        String[] namespaces = new String[steps.size()];
+        String[] localNames = new String[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            String step = steps.get(i);
+            if (step.startsWith("{")) {
+                int namespaceEnd = step.indexOf('}');
+                Validate.isTrue(namespaceEnd > 0, "Unterminated namespace in selector [%s]!", expression);
+                namespaces[i] = step.substring(1, namespaceEnd).intern();
+                step = step.substring(namespaceEnd + 1);
+            }
+            Validate.isTrue(isNotEmpty(step), "Empty element name in selector [%s]!", expression);
+            localNames[i] = ANY.equals(step) ? null : step.intern();
+        }
+        return new ElementSelector(expression, absolute, namespaces, localNames);
+    }
+
+    /**
+     * @return selectors for each of the given expressions.
+     */
+    public static List<ElementSelector> parseAll(String... expressions) {
+        List<ElementSelector> selectors = new ArrayList<>(expressions.length);
+        for (String expression : expressions) {
+            selectors.add(parse(expression));
+        }
+        return selectors;
+    }
+
+    /**
+     * @return <code>true</code> if the innermost open element on the given stack is selected by me.
+     */
+    boolean matches(ElementStack elementStack) {
+        int depth = elementStack.depth();
+        int steps = localNames.length;
+        if (absolute ? depth != steps : depth < steps) {
+            return false;
+        }
+        for (int step = steps - 1, level = depth - 1; step >= 0; step--, level--) {
+            if (!matchesStep(step, elementStack.namespaceAt(level), elementStack.localNameAt(level))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesStep(int step, String namespace, String localName) {
+        return (Objects.isNull(localNames[step]) || ElementStack.sameName(localNames[step], localName))
+                && (Objects.isNull(namespaces[step]) || ElementStack.sameName(namespaces[step], StringUtils.defaultString(namespace)));
+    }
+
+    /**
+     * @return the local name I select on, where I select on a single name - e.g. <code>OTCTrade</code> for both
+     * <code>OTCTrade</code> and <code>/trades/{urn:trades}OTCTrade</code>; <code>null</code> for a trailing <code>*</code>.
+     */
+    public String localName() {
+        return localNames[localNames.length - 1];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ElementSelector that && expression.equals(that.expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Splits a path on its <code>/</code> separators - ignoring any within <code>{namespace}</code> parts, as namespace
+     * URIs usually contain them.
+     */
+    private static List<String> splitSteps(String path) {
+        List<String> steps = new ArrayList<>();
+        int stepStart = 0;
+        boolean inNamespace = false;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '{') {
+                inNamespace = true;
+            } else if (c == '}') {
+                inNamespace = false;
+            } else if (c == '/' && !inNamespace) {
+                steps.add(path.substring(stepStart, i));
+                stepStart = i + 1;
+            }
+        }
+        steps.add(path.substring(stepStart));
+        return steps;
+    }
+}
@@ -0,0 +1,68 @@
+package org.g5.util.stream.xml;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * I am the stack of open elements - namespace and local name - from the document root down to the element currently
+ * being read. I am array backed, and only allocate when the document is deeper than any seen before, so that
+ * {@link ElementSelector selectors} can match against me on every start tag without allocating.
+ * <p>
+ * StAX parsers canonicalise element names and namespace URIs through their symbol tables - the JDK, Woodstox and Aalto
+ * parsers all hand out interned strings - so names are compared by {@link #sameName(String, String) reference first}.
+ */
+final class ElementStack {
+
+    private String[] namespaces = new String[16];
+    private String[] localNames = new String[16];
+    private int depth;
+
+    /**
+     * @return whether the given names are equal - by reference for interned names, else by value.
+     */
+    static boolean sameName(String name, String otherName) {
+        return name == otherName || (name != null && name.equals(otherName));
+    }
+
+    void push(String namespace, String localName) {
+        if (depth == localNames.length) {
+            namespaces = Arrays.copyOf(namespaces, depth << 1);
+            localNames = Arrays.copyOf(localNames, depth << 1);
+        }
+        namespaces[depth] = namespace;
+        localNames[depth++] = localName;
+    }
+
+    void pop() {
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        depth--;
+        namespaces[depth] = localNames[depth] = null;
+    }
+
+    /**
+     * @return the local name of the innermost open element - or <code>null</code> if there is none.
+     */
+    String peekLocalName() {
+        return depth == 0 ? null : localNames[depth - 1];
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * @param level the nesting level, with the document root at level <code>0</code>.
+     */
+    String namespaceAt(int level) {
+        return namespaces[level];
+    }
+
+    /**
+     * @param level the nesting level, with the document root at level <code>0</code>.
+     */
+    String localNameAt(int level) {
+        return localNames[level];
+    }
+}
@@ -0,0 +1,423 @@
+package org.g5.util.stream.xml;
+
+import org.apache.commons.lang3.Validate;
+import org.jdom2.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * I split a huge, single-root XML file across cores. Where {@link XmlSpliterator} is one sequential StAX cursor, I cut
+ * the file into chunks of roughly equal size, and read each chunk with its own, independent StAX reader - so I am a
+ * properly splittable {@link Spliterator spliterator}, fit for {@link Stream#parallel() parallel} streams.
+ * <p>
+ * Chunk boundaries are found by a fast byte scanner, which looks for the split element's start tag near each nominal
+ * boundary - so only a sliver of the file is scanned up front. Each chunk is parsed wrapped in a synthetic element
+ * declaring every namespace in scope at the split elements, so elements come out exactly as they would sequentially.
+ * Element order is preserved on request - at some cost to parallel throughput.
+ * <p>
+ * The split elements are chosen by an {@link ElementSelector selector} - a local name, qualified name or path - ending in
+ * an element name: the first element it selects fixes the start tag scanned for.
+ * <p>
+ * The byte scanner is not a parser, so the file must meet a few conditions:<ul>
+ * <li>the split elements are siblings - children of the same parent element;</li>
+ * <li>the split element's start tag (<code>&lt;prefix:name</code>, exactly as first used) does not appear in comments or
+ * CDATA sections, nor nested within a split element;</li>
+ * <li>nothing but whitespace follows the root element's end tag, and no end tags follow the parent's;</li>
+ * <li>the file is UTF-8 (or ASCII) encoded, and relies on no DTD defined entities.</li>
+ * </ul>
+ * Where these can't be guaranteed, use an {@link XmlSpliterator}.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ */
+public class ParallelXmlSpliterator implements Spliterator<Element> {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelXmlSpliterator.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+    private static final int SCAN_BLOCK_SIZE = 64 << 10;
+    private static final String CHUNK_ROOT = "xml-spliterator-chunk";
+    private static final Set<String> SUPPORTED_ENCODINGS = Set.of("UTF-8", "UTF8", "US-ASCII", "ASCII");
+
+    private final ChunkedXmlFile xmlFile;
+    private final int characteristics;
+    //the chunks not yet started - [fromChunk, toChunk)
+    private int fromChunk;
+    private final int toChunk;
+    private XmlSpliterator currentChunk;
+
+    private ParallelXmlSpliterator(ChunkedXmlFile xmlFile, int fromChunk, int toChunk, int characteristics) {
+        this.xmlFile = xmlFile;
+        this.fromChunk = fromChunk;
+        this.toChunk = toChunk;
+        this.characteristics = characteristics;
+    }
+
+    /**
+     * As {@link #stream(Path, String, int, boolean)}, with chunks of {@link #DEFAULT_CHUNK_SIZE 8MB}.
+     */
+    public static Stream<Element> stream(Path xmlFile, String splitOnElementName, boolean ordered) throws IOException, XMLStreamException {
+        return stream(xmlFile, splitOnElementName, DEFAULT_CHUNK_SIZE, ordered);
+    }
+
+    /**
+     * Builds a parallel stream over the elements of the given name in the given file. The stream holds the file open -
+     * close it when done, ideally with try-with-resources.
+     *
+     * @param splitOnElementName the {@link ElementSelector selector} of the split elements - e.g. <code>trade</code>,
+     *                           <code>{urn:trades}trade</code> or <code>/trades/trade</code>.
+     * @param chunkSize the nominal size, in bytes, of each chunk handed to a reader.
+     * @param ordered whether elements must be encountered in document order.
+     */
+    public static Stream<Element> stream(Path xmlFile, String splitOnElementName, int chunkSize, boolean ordered) throws IOException, XMLStreamException {
+        ElementSelector splitSelector = ElementSelector.parse(splitOnElementName);
+        Validate.isTrue(Objects.nonNull(splitSelector.localName()),
+                "Can not split on [%s] in parallel - the selector must end in an element name!", splitOnElementName);
+        Validate.isTrue(splitSelector.localName().indexOf(':') < 0,
+                "Can not split on [%s] - select namespaced elements as {namespace}name, not by prefix!", splitOnElementName);
+        ChunkedXmlFile chunkedXmlFile = ChunkedXmlFile.open(xmlFile, splitSelector, chunkSize);
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+        return StreamSupport.stream(new ParallelXmlSpliterator(chunkedXmlFile, 0, chunkedXmlFile.chunkCount(), characteristics), true)
+                .onClose(chunkedXmlFile::closeQuietly);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Element> action) {
+        while (true) {
+            if (Objects.isNull(currentChunk)) {
+                if (fromChunk >= toChunk) {
+                    return false;
+                }
+                currentChunk = xmlFile.openChunk(fromChunk++);
+            }
+            if (currentChunk.hasNext()) {
+                action.accept(currentChunk.next());
+                return true;
+            }
+            currentChunk = null;
+        }
+    }
+
+    @Override
+    public Spliterator<Element> trySplit() {
+        //a chunk part-read can't be handed off, nor can chunks be split off ahead of it without breaking encounter order
+        if (Objects.nonNull(currentChunk) || toChunk - fromChunk < 2) {
+            return null;
+        }
+        int midChunk = fromChunk + (toChunk - fromChunk) / 2;
+        ParallelXmlSpliterator prefix = new ParallelXmlSpliterator(xmlFile, fromChunk, midChunk, characteristics);
+        fromChunk = midChunk;
+        return prefix;
+    }
+
+    /**
+     * @return the number of bytes left to read - the number of elements is unknown, but proportional.
+     */
+    @Override
+    public long estimateSize() {
+        return fromChunk >= toChunk ? 0 : xmlFile.bytesBetween(fromChunk, toChunk);
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+
+    /**
+     * I hold what every chunk reader needs: the file, the chunk boundaries, and the synthetic wrapper declaring the
+     * namespaces in scope at the split elements.
+     */
+    private static final class ChunkedXmlFile implements Closeable {
+
+        private final Path path;
+        private final FileChannel channel;
+        //selects the split elements within a chunk - by the qualified name of the first element the selector selected
+        private final ElementSelector chunkSelector;
+        private final long[] chunkStarts;
+        private final long regionEnd;
+        private final byte[] chunkPrefix;
+        private final byte[] chunkSuffix;
+
+        private ChunkedXmlFile(Path path, FileChannel channel, ElementSelector chunkSelector, long[] chunkStarts, long regionEnd,
+                               byte[] chunkPrefix, byte[] chunkSuffix) {
+            this.path = path;
+            this.channel = channel;
+            this.chunkSelector = chunkSelector;
+            this.chunkStarts = chunkStarts;
+            this.regionEnd = regionEnd;
+            this.chunkPrefix = chunkPrefix;
+            this.chunkSuffix = chunkSuffix;
+        }
+
+        static ChunkedXmlFile open(Path path, ElementSelector splitSelector, int chunkSize) throws IOException, XMLStreamException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                SplitContext splitContext = SplitContext.read(path, splitSelector);
+                if (Objects.isNull(splitContext)) {
+                    log.info("No [{}] elements in {} - nothing to split.", splitSelector, path);
+                    return new ChunkedXmlFile(path, channel, splitSelector, new long[0], 0, new byte[0], new byte[0]);
+                }
+                byte[] startTag = ("<" + splitContext.qualifiedName()).getBytes(StandardCharsets.UTF_8);
+                long regionEnd = splitContext.depth() == 0 ? channel.size() : findNthLastEndTag(channel, splitContext.depth());
+                List<Long> chunkStarts = new ArrayList<>();
+                for (long start = findStartTag(channel, startTag, 0, regionEnd); start >= 0;
+                     start = findStartTag(channel, startTag, start + chunkSize, regionEnd)) {
+                    chunkStarts.add(start);
+                }
+                log.debug("Split {} into {} chunks.", path, chunkStarts.size());
+                return new ChunkedXmlFile(path, channel, splitContext.chunkSelector(),
+                        chunkStarts.stream().mapToLong(Long::longValue).toArray(), regionEnd,
+                        chunkPrefix(splitContext.namespaces()), ("</" + CHUNK_ROOT + ">").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | XMLStreamException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int chunkCount() {
+            return chunkStarts.length;
+        }
+
+        long bytesBetween(int fromChunk, int toChunk) {
+            return chunkEnd(toChunk - 1) - chunkStarts[fromChunk];
+        }
+
+        XmlSpliterator openChunk(int chunk) {
+            long start = chunkStarts[chunk];
+            long end = chunkEnd(chunk);
+            InputStream chunkStream = new SequenceInputStream(Collections.enumeration(List.of(
+                    new ByteArrayInputStream(chunkPrefix),
+                    new ChannelRangeInputStream(channel, start, end),
+                    new ByteArrayInputStream(chunkSuffix))));
+            try {
+                XMLStreamReader chunkReader = XmlReaderFactory.defaultFactory().createReader(new StreamSource(chunkStream, path.toUri().toString()));
+                return new XmlSpliterator(chunkReader, List.of(chunkSelector), null) {
+                    @Override
+                    protected void onReadFailure(XMLStreamException e) {
+                        throw new IllegalStateException("Failed reading chunk [%d-%d] of %s!".formatted(start, end, path), e);
+                    }
+                };
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Failed opening chunk [%d-%d] of %s!".formatted(start, end, path), e);
+            }
+        }
+
+        private long chunkEnd(int chunk) {
+            return chunk + 1 < chunkStarts.length ? chunkStarts[chunk + 1] : regionEnd;
+        }
+
+        void closeQuietly() {
+            try {
+                close();
+            } catch (IOException e) {
+                log.warn("Failed to close {}.", path, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private static byte[] chunkPrefix(Map<String, String> namespaces) {
+            StringBuilder prefix = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><").append(CHUNK_ROOT);
+            namespaces.forEach((namespacePrefix, namespaceUri) -> prefix
+                    .append(namespacePrefix.isEmpty() ? " xmlns" : " xmlns:" + namespacePrefix)
+                    .append("=\"").append(escapeAttribute(namespaceUri)).append('"'));
+            return prefix.append('>').toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static String escapeAttribute(String value) {
+            return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+        }
+
+        /**
+         * Finds the first start tag at or after the given position - the tag name followed by whitespace, '>' or '/'.
+         *
+         * @return the tag's position, or <code>-1</code> if there is none before the limit.
+         */
+        private static long findStartTag(FileChannel channel, byte[] startTag, long from, long limit) throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+            for (long blockStart = from; blockStart < limit; blockStart += SCAN_BLOCK_SIZE - startTag.length) {
+                block.clear();
+                int read = readFully(channel, block, blockStart);
+                byte[] bytes = block.array();
+                for (int i = 0; i + startTag.length < read && blockStart + i < limit; i++) {
+                    if (matchesAt(bytes, i, startTag) && isTagNameEnd(bytes[i + startTag.length])) {
+                        return blockStart + i;
+                    }
+                }
+                if (read < SCAN_BLOCK_SIZE) {
+                    break;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Scans backwards from the end of the file for the n<sup>th</sup> last end tag - the end tag of the split
+         * elements' parent, where n is the split elements' depth.
+         */
+        private static long findNthLastEndTag(FileChannel channel, int n) throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+            int found = 0;
+            //blocks overlap by a byte, so a "</" straddling two blocks is seen by the earlier one - and only by that one,
+            //as a pair starting on a block's last byte is never considered
+            for (long blockEnd = channel.size(); blockEnd > 0; blockEnd -= SCAN_BLOCK_SIZE - 1) {
+                long blockStart = Math.max(0, blockEnd - SCAN_BLOCK_SIZE);
+                block.clear().limit((int) (blockEnd - blockStart));
+                int read = readFully(channel, block, blockStart);
+                byte[] bytes = block.array();
+                for (int i = read - 2; i >= 0; i--) {
+                    if (bytes[i] == '<' && bytes[i + 1] == '/' && ++found == n) {
+                        return blockStart + i;
+                    }
+                }
+                if (blockStart == 0) {
+                    break;
+                }
+            }
+            throw new IllegalStateException("Could not find the split elements' parent end tag - is the document complete?");
+        }
+
+        private static int readFully(FileChannel channel, ByteBuffer block, long position) throws IOException {
+            int read = 0;
+            while (block.hasRemaining()) {
+                int n = channel.read(block, position + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            return read;
+        }
+
+        private static boolean matchesAt(byte[] bytes, int offset, byte[] pattern) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (bytes[offset + i] != pattern[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isTagNameEnd(byte b) {
+            return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+
+    /**
+     * What a sequential StAX read up to the first split element tells us: its qualified name as written, how deep it
+     * is, the namespaces in scope from its ancestors, and how to select it within a chunk.
+     */
+    private record SplitContext(String qualifiedName, int depth, Map<String, String> namespaces, ElementSelector chunkSelector) {
+
+        /**
+         * @return the split context - or <code>null</code> if the document holds no split elements.
+         */
+        static SplitContext read(Path path, ElementSelector splitSelector) throws IOException, XMLStreamException {
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                XMLStreamReader reader = XmlReaderFactory.defaultFactory().createReader(inputStream);
+                try {
+                    String encoding = Objects.requireNonNullElse(reader.getEncoding(), "UTF-8");
+                    if (!SUPPORTED_ENCODINGS.contains(encoding.toUpperCase())) {
+                        throw new IllegalArgumentException("Can not split %s in parallel - unsupported encoding %s!".formatted(path, encoding));
+                    }
+                    Deque<Map<String, String>> ancestorNamespaces = new ArrayDeque<>();
+                    ElementStack elementStack = new ElementStack();
+                    for (; reader.hasNext(); reader.next()) {
+                        if (reader.isStartElement()) {
+                            String namespace = reader.getNamespaceURI();
+                            elementStack.push(namespace, reader.getLocalName());
+                            if (splitSelector.matches(elementStack)) {
+                                Map<String, String> inScope = new LinkedHashMap<>();
+                                ancestorNamespaces.descendingIterator().forEachRemaining(inScope::putAll);
+                                String prefix = reader.getPrefix();
+                                String qualifiedName = Objects.isNull(prefix) || prefix.isEmpty()
+                                        ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+                                ElementSelector chunkSelector = ElementSelector.parse(
+                                        "{" + Objects.requireNonNullElse(namespace, "") + "}" + reader.getLocalName());
+                                return new SplitContext(qualifiedName, ancestorNamespaces.size(), inScope, chunkSelector);
+                            }
+                            Map<String, String> declared = new LinkedHashMap<>();
+                            for (int i = 0, len = reader.getNamespaceCount(); i < len; i++) {
+                                declared.put(Objects.requireNonNullElse(reader.getNamespacePrefix(i), ""),
+                                        Objects.requireNonNullElse(reader.getNamespaceURI(i), ""));
+                            }
+                            ancestorNamespaces.push(declared);
+                        } else if (reader.isEndElement()) {
+                            ancestorNamespaces.pop();
+                            elementStack.pop();
+                        }
+                    }
+                    return null;
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * I read a byte range of a file channel with positional reads - so any number of us can share the one channel,
+     * across threads.
+     */
+    private static final class ChannelRangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        private ChannelRangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file at " + position + "!");
+            }
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.g5.util.stream.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.Objects;
+
+/**
+ * I stream every event an XML spliterator passes over straight to an {@link XMLStreamWriter}. Registered as a
+ * spliterator's {@link XmlEventHandler event handler}, I turn it into a filter: the output is the input document with
+ * the split elements taken out - to be dropped, or rewritten by the caller as they are consumed.
+ * <p>
+ * Text is copied from the reader's own buffer, so nothing is allocated per event. DTDs and entity references are not
+ * passed through. I flush - but do not close - the writer at the end of the document.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ */
+public class PassThroughXmlWriter implements XmlEventHandler {
+
+    private final XMLStreamWriter xmlStreamWriter;
+
+    public PassThroughXmlWriter(XMLStreamWriter xmlStreamWriter) {
+        this.xmlStreamWriter = Objects.requireNonNull(xmlStreamWriter, "No XML writer specified! Can not continue!");
+    }
+
+    @Override
+    public void startDocument(XmlEventView document) throws XMLStreamException {
+        String version = Objects.requireNonNullElse(document.version(), "1.0");
+        if (Objects.isNull(document.encoding())) {
+            xmlStreamWriter.writeStartDocument(version);
+        } else {
+            xmlStreamWriter.writeStartDocument(document.encoding(), version);
+        }
+    }
+
+    @Override
+    public void endDocument() throws XMLStreamException {
+        xmlStreamWriter.writeEndDocument();
+        xmlStreamWriter.flush();
+    }
+
+    @Override
+    public void startElement(XmlEventView element) throws XMLStreamException {
+        String namespaceUri = element.namespaceUri();
+        if (Objects.isNull(namespaceUri) || namespaceUri.isEmpty()) {
+            xmlStreamWriter.writeStartElement(element.localName());
+        } else {
+            xmlStreamWriter.writeStartElement(Objects.requireNonNullElse(element.prefix(), ""), element.localName(), namespaceUri);
+        }
+        for (int i = 0, len = element.namespaceCount(); i < len; i++) {
+            String prefix = element.namespacePrefix(i);
+            if (Objects.isNull(prefix) || prefix.isEmpty()) {
+                xmlStreamWriter.writeDefaultNamespace(element.namespaceUri(i));
+            } else {
+                xmlStreamWriter.writeNamespace(prefix, element.namespaceUri(i));
+            }
+        }
+        for (int i = 0, len = element.attributeCount(); i < len; i++) {
+            String attributeNamespace = element.attributeNamespace(i);
+            if (Objects.isNull(attributeNamespace) || attributeNamespace.isEmpty()) {
+                xmlStreamWriter.writeAttribute(element.attributeLocalName(i), element.attributeValue(i));
+            } else {
+                xmlStreamWriter.writeAttribute(element.attributePrefix(i), attributeNamespace, element.attributeLocalName(i), element.attributeValue(i));
+            }
+        }
+    }
+
+    @Override
+    public void endElement(XmlEventView element) throws XMLStreamException {
+        xmlStreamWriter.writeEndElement();
+    }
+
+    @Override
+    public void characters(XmlEventView text) throws XMLStreamException {
+        if (text.eventType() == XMLStreamConstants.CDATA) {
+            xmlStreamWriter.writeCData(text.text());
+        } else {
+            xmlStreamWriter.writeCharacters(text.textCharacters(), text.textStart(), text.textLength());
+        }
+    }
+
+    @Override
+    public void comment(XmlEventView comment) throws XMLStreamException {
+        xmlStreamWriter.writeComment(comment.text());
+    }
+
+    @Override
+    public void processingInstruction(XmlEventView processingInstruction) throws XMLStreamException {
+        String data = processingInstruction.piData();
+        if (Objects.isNull(data) || data.isEmpty()) {
+            xmlStreamWriter.writeProcessingInstruction(processingInstruction.piTarget());
+        } else {
+            xmlStreamWriter.writeProcessingInstruction(processingInstruction.piTarget(), data);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package org.g5.util.stream.xml;
 
-import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -9,11 +9,18 @@ import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.lang3.StringUtils;
 
-public abstract class StreamingXmlElementHandler {
+/**
+ * I am the original, string based skipped element handler: each skipped start tag is serialized to a string for
+ * {@link #handleStartElementEvent(String)}, and each end tag reported by name. I am adapted onto the structured
+ * {@link XmlEventHandler} events - which, with their reused {@link XmlEventView views}, avoid serializing anything at
+ * all, and are preferred for new code.
+ */
+public abstract class StreamingXmlElementHandler implements XmlEventHandler {
     XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
     
     public String elementAsString(XMLStreamReader reader) throws XMLStreamException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        //characters rather than bytes - no round trip through the platform charset
+        StringWriter buffer = new StringWriter();
         XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(buffer);
         final String namespaceURI = reader.getNamespaceURI();
         if (StringUtils.isNotEmpty(namespaceURI)) {
@@ -35,12 +42,22 @@ public abstract class StreamingXmlElementHandler {
             writer.writeNamespace(reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
         }
         writer.flush();
-        String elementString = new String(buffer.toByteArray());
+        String elementString = buffer.toString();
         if (!elementString.endsWith(">")) {
             elementString = elementString + ">";
         }
         return elementString;
     }
+
+    @Override
+    public final void startElement(XmlEventView element) throws XMLStreamException {
+        handleStartElementEvent(elementAsString(element.reader()));
+    }
+
+    @Override
+    public final void endElement(XmlEventView element) throws XMLStreamException {
+        handleEndElementEvent(element.localName());
+    }
     
     public abstract void handleStartElementEvent(String elementAsString);
     public abstract void handleEndElementEvent(String elementName);
@@ -0,0 +1,106 @@
+package org.g5.util.stream.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * I bind a split element directly from the StAX cursor into an object of my choosing - bypassing JDOM tree construction
+ * entirely. Used with an {@link XmlBindingSpliterator}.
+ * <p>
+ * I am called with the reader positioned on the split element's start tag. I must consume the whole element, and leave
+ * the reader positioned on the event <i>following</i> the element's end tag - {@link #skipElement(XMLStreamReader)}
+ * helps with the latter, for binders that only read the first few fields of an element.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ *
+ * @param <T> the type bound.
+ */
+@FunctionalInterface
+public interface XmlElementBinder<T> {
+
+    T bind(XMLStreamReader xmlStreamReader) throws XMLStreamException;
+
+    /**
+     * I bind an element into a minimal map of the text of each of its leaf elements, keyed by path relative to the
+     * element - for example <code>contractId</code> or <code>trade/price</code>. Attributes are keyed by
+     * <code>@name</code> on the path of their element - for example <code>@id</code> or <code>field/@id</code>.
+     * Where a path repeats, the first value is kept. The text of an element without child elements is keyed by the
+     * empty path.
+     */
+    static XmlElementBinder<Map<String, String>> pathTexts() {
+        return xmlStreamReader -> {
+            Map<String, String> pathTexts = new LinkedHashMap<>();
+            StringBuilder path = new StringBuilder();
+            StringBuilder text = new StringBuilder();
+            int[] pathLengths = new int[8];
+            int depth = 0;
+            boolean leaf = true;
+            putAttributes(xmlStreamReader, "", pathTexts);
+            while (xmlStreamReader.hasNext()) {
+                switch (xmlStreamReader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        if (depth == pathLengths.length) {
+                            pathLengths = Arrays.copyOf(pathLengths, depth << 1);
+                        }
+                        pathLengths[depth++] = path.length();
+                        path.append(path.isEmpty() ? "" : "/").append(xmlStreamReader.getLocalName());
+                        putAttributes(xmlStreamReader, path + "/", pathTexts);
+                        text.setLength(0);
+                        leaf = true;
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        text.append(xmlStreamReader.getTextCharacters(), xmlStreamReader.getTextStart(), xmlStreamReader.getTextLength());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (depth == 0) {//the split element itself is complete
+                            if (leaf) {
+                                pathTexts.putIfAbsent("", text.toString());
+                            }
+                            advance(xmlStreamReader);
+                            return pathTexts;
+                        }
+                        if (leaf) {
+                            pathTexts.putIfAbsent(path.toString(), text.toString());
+                        }
+                        path.setLength(pathLengths[--depth]);
+                        text.setLength(0);
+                        leaf = false;
+                    }
+                    default -> { }
+                }
+            }
+            return pathTexts;
+        };
+    }
+
+    /**
+     * Skips the remainder of the element the reader is in - up to, and past, its end tag. Call me with the reader
+     * anywhere within the element, but not within one of its child elements.
+     */
+    static void skipElement(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && xmlStreamReader.hasNext()) {
+            switch (xmlStreamReader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                default -> { }
+            }
+        }
+        advance(xmlStreamReader);
+    }
+
+    private static void advance(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+        if (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+        }
+    }
+
+    private static void putAttributes(XMLStreamReader xmlStreamReader, String pathPrefix, Map<String, String> pathTexts) {
+        for (int i = 0, len = xmlStreamReader.getAttributeCount(); i < len; i++) {
+            pathTexts.putIfAbsent(pathPrefix + "@" + xmlStreamReader.getAttributeLocalName(i), xmlStreamReader.getAttributeValue(i));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.g5.util.stream.xml;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * I receive the events an XML spliterator passes over - everything outside the elements it splits on - as they are read.
+ * Each event is described by a reused {@link XmlEventView view} of the reader, so handling events allocates nothing
+ * unless the handler itself does. All methods do nothing by default; implement only those of interest.
+ * <p>
+ * Whitespace and CDATA are delivered as {@link #characters(XmlEventView) characters}; the view's event type tells
+ * them apart.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ */
+public interface XmlEventHandler {
+
+    default void startDocument(XmlEventView document) throws XMLStreamException { }
+
+    default void endDocument() throws XMLStreamException { }
+
+    default void startElement(XmlEventView element) throws XMLStreamException { }
+
+    default void endElement(XmlEventView element) throws XMLStreamException { }
+
+    default void characters(XmlEventView text) throws XMLStreamException { }
+
+    default void comment(XmlEventView comment) throws XMLStreamException { }
+
+    default void processingInstruction(XmlEventView processingInstruction) throws XMLStreamException { }
+}
@@ -0,0 +1,132 @@
+package org.g5.util.stream.xml;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * I am a read-only view of the StAX event currently under the cursor - its name, attributes, namespaces or text -
+ * handed to an {@link XmlEventHandler}. I am a flyweight: a single instance of me is reused for every event, reading
+ * straight from the underlying reader, so nothing is copied or allocated unless asked for.
+ * <p>
+ * That also means I am only valid for the duration of the callback I am passed to - copy out whatever must be kept.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ */
+public final class XmlEventView {
+
+    private final XMLStreamReader xmlStreamReader;
+
+    XmlEventView(XMLStreamReader xmlStreamReader) {
+        this.xmlStreamReader = xmlStreamReader;
+    }
+
+    XMLStreamReader reader() {
+        return xmlStreamReader;
+    }
+
+    /**
+     * @return the {@link javax.xml.stream.XMLStreamConstants StAX event type}.
+     */
+    public int eventType() {
+        return xmlStreamReader.getEventType();
+    }
+
+    public String localName() {
+        return xmlStreamReader.getLocalName();
+    }
+
+    public String namespaceUri() {
+        return xmlStreamReader.getNamespaceURI();
+    }
+
+    public String prefix() {
+        return xmlStreamReader.getPrefix();
+    }
+
+    public int attributeCount() {
+        return xmlStreamReader.getAttributeCount();
+    }
+
+    public String attributeLocalName(int index) {
+        return xmlStreamReader.getAttributeLocalName(index);
+    }
+
+    public String attributeNamespace(int index) {
+        return xmlStreamReader.getAttributeNamespace(index);
+    }
+
+    public String attributePrefix(int index) {
+        return xmlStreamReader.getAttributePrefix(index);
+    }
+
+    public String attributeValue(int index) {
+        return xmlStreamReader.getAttributeValue(index);
+    }
+
+    /**
+     * @return the value of the named attribute in no namespace - or <code>null</code> if there is none.
+     */
+    public String attributeValue(String localName) {
+        return xmlStreamReader.getAttributeValue(null, localName);
+    }
+
+    /**
+     * @return the number of namespaces declared on the current start or end element.
+     */
+    public int namespaceCount() {
+        return xmlStreamReader.getNamespaceCount();
+    }
+
+    public String namespacePrefix(int index) {
+        return xmlStreamReader.getNamespacePrefix(index);
+    }
+
+    public String namespaceUri(int index) {
+        return xmlStreamReader.getNamespaceURI(index);
+    }
+
+    /**
+     * @return the text of a characters, CDATA, whitespace or comment event - as a new string. Prefer
+     * {@link #textCharacters()} where the text need not be kept.
+     */
+    public String text() {
+        return xmlStreamReader.getText();
+    }
+
+    /**
+     * @return the reader's own text buffer - valid from {@link #textStart()} for {@link #textLength()} characters,
+     * and only until the cursor moves on.
+     */
+    public char[] textCharacters() {
+        return xmlStreamReader.getTextCharacters();
+    }
+
+    public int textStart() {
+        return xmlStreamReader.getTextStart();
+    }
+
+    public int textLength() {
+        return xmlStreamReader.getTextLength();
+    }
+
+    public String piTarget() {
+        return xmlStreamReader.getPITarget();
+    }
+
+    public String piData() {
+        return xmlStreamReader.getPIData();
+    }
+
+    /**
+     * @return the XML version declared by the document - or <code>null</code> if it has no declaration.
+     */
+    public String version() {
+        return xmlStreamReader.getVersion();
+    }
+
+    /**
+     * @return the encoding declared by the document - or <code>null</code> if it declares none.
+     */
+    public String encoding() {
+        return xmlStreamReader.getCharacterEncodingScheme();
+    }
+}
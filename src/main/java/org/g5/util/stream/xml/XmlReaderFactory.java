@@ -0,0 +1,185 @@
+package org.g5.util.stream.xml;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * I create the StAX readers the XML spliterators run on, from a single {@link XMLInputFactory factory} that is looked up
+ * and tuned once - rather than looking up and configuring a fresh factory for every document.
+ * <p>
+ * By default I prefer the faster Aalto or Woodstox implementations when either is on the classpath, falling back to the
+ * JDK's own. My defaults suit splitting large documents:<ul>
+ * <li>coalescing is off - text is handed over in whatever chunks the parser reads, rather than buffered whole;</li>
+ * <li>DTDs and external entities are disabled - which also closes off XXE and entity expansion attacks, but fails
+ * documents relying on entities their DTD declares: read those through a factory built with
+ * {@link Builder#supportDtd(boolean) DTD support};</li>
+ * <li>input is read through a large buffer.</li>
+ * </ul>
+ * I am immutable once built, and meant to be shared - the {@link #defaultFactory() default} instance is cached.
+ *
+ * Source code licensed under the GNU GPL v3.0 or later.
+ */
+public final class XmlReaderFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(XmlReaderFactory.class);
+
+    public static final String AALTO_INPUT_FACTORY = "com.fasterxml.aalto.stax.InputFactoryImpl";
+    public static final String WOODSTOX_INPUT_FACTORY = "com.ctc.wstx.stax.WstxInputFactory";
+    public static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+    private static final String WOODSTOX_INPUT_BUFFER_LENGTH = "com.ctc.wstx.inputBufferLength";
+    private static final String STAX2_INTERN_NAMES = "org.codehaus.stax2.internNames";
+    private static final String STAX2_INTERN_NS_URIS = "org.codehaus.stax2.internNsUris";
+
+    private final XMLInputFactory xmlInputFactory;
+    private final int bufferSize;
+
+    private XmlReaderFactory(XMLInputFactory xmlInputFactory, int bufferSize) {
+        this.xmlInputFactory = xmlInputFactory;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return the shared factory, with my default settings.
+     */
+    public static XmlReaderFactory defaultFactory() {
+        return DefaultFactoryHolder.DEFAULT_FACTORY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public XMLStreamReader createReader(Source xmlSource) throws XMLStreamException {
+        if (xmlSource instanceof StreamSource streamSource && Objects.nonNull(streamSource.getInputStream())) {
+            return createReader(streamSource.getInputStream(), streamSource.getSystemId());
+        }
+        return xmlInputFactory.createXMLStreamReader(xmlSource);
+    }
+
+    public XMLStreamReader createReader(InputStream inputStream) throws XMLStreamException {
+        return createReader(inputStream, null);
+    }
+
+    private XMLStreamReader createReader(InputStream inputStream, String systemId) throws XMLStreamException {
+        InputStream bufferedStream = inputStream instanceof BufferedInputStream ? inputStream : new BufferedInputStream(inputStream, bufferSize);
+        return Objects.isNull(systemId)
+                ? xmlInputFactory.createXMLStreamReader(bufferedStream)
+                : xmlInputFactory.createXMLStreamReader(systemId, bufferedStream);
+    }
+
+    /**
+     * @return the class name of the StAX implementation in use.
+     */
+    public String implementationName() {
+        return xmlInputFactory.getClass().getName();
+    }
+
+    private static final class DefaultFactoryHolder {
+        private static final XmlReaderFactory DEFAULT_FACTORY = builder().build();
+    }
+
+    public static final class Builder {
+
+        private final List<String> preferredImplementations = new ArrayList<>(List.of(AALTO_INPUT_FACTORY, WOODSTOX_INPUT_FACTORY));
+        private final Map<String, Object> properties = new LinkedHashMap<>();
+        private boolean coalescing;
+        private boolean supportDtd;
+        private boolean supportExternalEntities;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+        private Builder() { }
+
+        /**
+         * Replaces the implementations I try, in order of preference, before falling back to
+         * {@link XMLInputFactory#newInstance()}. Implementations not on the classpath are skipped.
+         */
+        public Builder preferredImplementations(String... inputFactoryClassNames) {
+            preferredImplementations.clear();
+            preferredImplementations.addAll(List.of(inputFactoryClassNames));
+            return this;
+        }
+
+        public Builder coalescing(boolean coalescing) {
+            this.coalescing = coalescing;
+            return this;
+        }
+
+        public Builder supportDtd(boolean supportDtd) {
+            this.supportDtd = supportDtd;
+            return this;
+        }
+
+        public Builder supportExternalEntities(boolean supportExternalEntities) {
+            this.supportExternalEntities = supportExternalEntities;
+            return this;
+        }
+
+        /**
+         * Sets the input buffer size - applied to the parser itself where it supports that, and to the stream it reads.
+         */
+        public Builder bufferSize(int bufferSize) {
+            Validate.isTrue(bufferSize > 0, "Buffer size must be positive!");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets an implementation specific property - ignored if the implementation doesn't support it.
+         */
+        public Builder property(String name, Object value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public XmlReaderFactory build() {
+            XMLInputFactory xmlInputFactory = newInputFactory();
+            xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, coalescing);
+            xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, supportDtd);
+            setIfSupported(xmlInputFactory, XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, supportExternalEntities);
+            setIfSupported(xmlInputFactory, WOODSTOX_INPUT_BUFFER_LENGTH, bufferSize);
+            //interned names let element names be matched by reference
+            setIfSupported(xmlInputFactory, STAX2_INTERN_NAMES, true);
+            setIfSupported(xmlInputFactory, STAX2_INTERN_NS_URIS, true);
+            properties.forEach((name, value) -> setIfSupported(xmlInputFactory, name, value));
+            log.debug("Using StAX implementation [{}].", xmlInputFactory.getClass().getName());
+            return new XmlReaderFactory(xmlInputFactory, bufferSize);
+        }
+
+        private XMLInputFactory newInputFactory() {
+            for (String className : preferredImplementations) {
+                try {
+                    Class<?> factoryClass = Class.forName(className);
+                    if (XMLInputFactory.class.isAssignableFrom(factoryClass)) {
+                        return (XMLInputFactory) factoryClass.getDeclaredConstructor().newInstance();
+                    }
+                    log.warn("[{}] is not a StAX input factory - ignoring it.", className);
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    log.debug("StAX implementation [{}] not available.", className);
+                }
+            }
+            return XMLInputFactory.newInstance();
+        }
+
+        private static void setIfSupported(XMLInputFactory xmlInputFactory, String name, Object value) {
+            if (xmlInputFactory.isPropertySupported(name)) {
+                xmlInputFactory.setProperty(name, value);
+            } else {
+                log.debug("StAX implementation [{}] does not support property [{}].", xmlInputFactory.getClass().getName(), name);
+            }
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package org.g5.yf;
 
-import org.g5.util.GZipper;
+import io.micrometer.core.instrument.Metrics;
+import org.g5.yf.chart.ChartDataDecoder;
+import org.g5.yf.chart.OhlcvSeries;
+import org.g5.yf.chart.OhlcvStore;
+import org.g5.yf.http.CircuitBreaker;
+import org.g5.yf.http.ContentDecodingBodyHandler;
+import org.g5.yf.http.HedgingPolicy;
+import org.g5.yf.http.HostConcurrencyLimiter;
+import org.g5.yf.http.HostRateLimiter;
+import org.g5.yf.http.HttpClientConfig;
+import org.g5.yf.http.HttpClientMetrics;
 import org.g5.yf.http.HttpRequestProcessor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.g5.yf.http.HttpResponseCache;
+import org.g5.yf.http.RequestPriority;
+import org.g5.yf.http.RetryPolicy;
+import org.g5.yf.page.EmbeddedJsonScanner;
+import tools.jackson.core.JsonPointer;
 import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.json.JsonMapper;
 
@@ -14,70 +26,299 @@ import java.net.URI;
 import java.net.URLDecoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.OffsetDateTime;
-import java.util.HashMap;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class YFinanceApi {
 
-    private static final String urlFormat = "https://query2.finance.yahoo.com/v8/finance/chart/$tic?period1=$start&period2=$end&interval=1m&includePrePost=true&events=div%7Csplit%7Cearn&lang=en-US&region=US&source=cosaic";
+    private static final URI CHART_BASE_URI = URI.create("https://query2.finance.yahoo.com");
+    private static final URI QUOTE_BASE_URI = URI.create("https://finance.yahoo.com");
+
+    private static final String chartPathFormat = "/v8/finance/chart/$tic?period1=$start&period2=$end&interval=1m&includePrePost=true&events=div%7Csplit%7Cearn&lang=en-US&region=US&source=cosaic";
 
     private static final String cookie = "dflow=917; EuConsent=CQoXoQAQoXoQAAOACKENCqFgAAAAAAAAACiQAAAAAAAA.IMHtB9G7eTXFneTJ2YLskOYwX0VBJ4MAwBgCAAEABzBIUIBwGVmATJEyIICACGAIAIGBBIABtGBhAQEAAIIAVAABIAEkAIBAAIGAAACAIQABACAABAAAAMAAQgEAXIAQgmAYEAFoIQUhAkgAgAQAAAAAEAIgBCASAEAAAQAAACAAAgCgAggAAAAAAAAAEAFAIEQAAIAECAovgdgAQAAAAAAgIAAYACEABAAAABIAAAgCAAAAAAAAAAACAAAAAAABCAIAACA; GUC=AQABCAFqcgpqq0IfZgR6&s=AQAAAN3f1NRW&g=anDCng; A1S=d=AQABBJTCcGoCEOm73KmuZR4txAh5UaFwJ9wFEgABCAEKcmqravZ0rXYBAiAAAAcIkMJwagVT3NU&S=AQAAAuiwsi3MSi28mkJ8tAFxffY; A1=d=AQABBJTCcGoCEOm73KmuZR4txAh5UaFwJ9wFEgABCAEKcmqravZ0rXYBAiAAAAcIkMJwagVT3NU&S=AQAAAuiwsi3MSi28mkJ8tAFxffY; A3=d=AQABBJTCcGoCEOm73KmuZR4txAh5UaFwJ9wFEgABCAEKcmqravZ0rXYBAiAAAAcIkMJwagVT3NU&S=AQAAAuiwsi3MSi28mkJ8tAFxffY; cmp=t=1785778354&j=1&u=1---&v=143; PRF=t%3DAAPL%26dock-collapsed%3Dtrue";
 
+    private static final int MAX_CONCURRENT_REQUESTS_PER_HOST = 8;
+    private static final int MAX_BATCH_IN_FLIGHT = 64;
+    //Yahoo starts answering 429 beyond a few requests a second
+    private static final double REQUESTS_PER_SECOND_PER_HOST = 5;
+    private static final int REQUEST_BURST_PER_HOST = 10;
+
     private final JsonMapper jsonParser = JsonMapper.builder().build();
-    private final HttpClient httpClient = HttpClient.newBuilder()
-            .followRedirects(HttpClient.Redirect.NORMAL)
+    private final ChartDataDecoder chartDataDecoder = new ChartDataDecoder(jsonParser);
+    private final EmbeddedJsonScanner embeddedJsonScanner = new EmbeddedJsonScanner(jsonParser);
+    private final ContentDecodingBodyHandler contentDecodingBodyHandler = ContentDecodingBodyHandler.defaultHandler();
+    private final HttpClientConfig httpClientConfig = HttpClientConfig.builder().build();
+    private final HttpClient httpClient = httpClientConfig.newHttpClient();
+    private final HttpClientMetrics httpClientMetrics = new HttpClientMetrics(Metrics.globalRegistry);
+    //shared by every processor - so the per-host limit, latencies and circuits hold across all fetches
+    private final HostConcurrencyLimiter concurrencyLimiter = new HostConcurrencyLimiter(MAX_CONCURRENT_REQUESTS_PER_HOST);
+    private final RetryPolicy retryPolicy = RetryPolicy.builder().build();
+    private final HedgingPolicy hedgingPolicy = new HedgingPolicy(95, Duration.ofMillis(250));
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(5, Duration.ofSeconds(30));
+    private final HostRateLimiter rateLimiter = new HostRateLimiter(REQUESTS_PER_SECOND_PER_HOST, REQUEST_BURST_PER_HOST);
+    private final HttpRequestProcessor<InputStream> requestProcessor = processor();
+    private final HttpResponseCache responseCache = HttpResponseCache.builder(processor())
+            .contentDecoding(contentDecodingBodyHandler)
             .build();
 
+    //batch fetches block virtual threads only - the permits bound how many decode at once
+    private final ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore batchPermits = new Semaphore(MAX_BATCH_IN_FLIGHT);
+    private final Map<String, CompletableFuture<JsonNode>> stockDataInFlight = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<OhlcvSeries>> stockSeriesInFlight = new ConcurrentHashMap<>();
+
+    private final URI chartBaseUri;
+    private final URI quoteBaseUri;
+    //null when bars are not stored locally
+    private final OhlcvStore seriesStore;
+
+    public YFinanceApi() {
+        this((OhlcvStore) null);
+    }
+
+    /**
+     * @param seriesStore where to keep bars for {@link #getStockSeriesIncrementally(String) incremental fetches}.
+     */
+    public YFinanceApi(OhlcvStore seriesStore) {
+        this(CHART_BASE_URI, QUOTE_BASE_URI, seriesStore);
+    }
+
+    /**
+     * @param chartBaseUri where to fetch charts from - e.g. a local stand-in for Yahoo, in tests.
+     * @param quoteBaseUri where to fetch quote pages from.
+     * @param seriesStore where to keep bars for {@link #getStockSeriesIncrementally(String) incremental fetches} - or
+     *                    <code>null</code> for none.
+     */
+    public YFinanceApi(URI chartBaseUri, URI quoteBaseUri, OhlcvStore seriesStore) {
+        this.chartBaseUri = Objects.requireNonNull(chartBaseUri, "No chart URI specified! Can not continue!");
+        this.quoteBaseUri = Objects.requireNonNull(quoteBaseUri, "No quote URI specified! Can not continue!");
+        this.seriesStore = seriesStore;
+    }
+
+    private <T> HttpRequestProcessor<T> processor() {
+        return HttpRequestProcessor.<T>builder(httpClient)
+                .concurrencyLimiter(concurrencyLimiter)
+                .requestTimeout(httpClientConfig.requestTimeout())
+                .retryPolicy(retryPolicy)
+                .hedgingPolicy(hedgingPolicy)
+                .circuitBreaker(circuitBreaker)
+                .rateLimiter(rateLimiter)
+                .metrics(httpClientMetrics)
+                .build();
+    }
+
     public Map<String, JsonNode> getData(String stockTicker) {
-        try {
-            Document document = Jsoup.connect("https://finance.yahoo.com/quote/" + stockTicker).get();
-            Map<String, String> dataMap = document.select("script[data-sveltekit-fetched][data-url]").stream()
-                    .filter(s -> {
-                        String u = s.attr("data-url");
-                        return u.contains("finance/timeseries") || u.contains("finance/quoteSummary");
-                    })
-                    .collect(Collectors.toMap(e -> e.attr("data-url"), Element::html));
-            Map<String, JsonNode> jsonNodeMap = new HashMap<>();
-            for (Map.Entry<String, String> row : dataMap.entrySet()) {
-                jsonNodeMap.put(row.getKey(), jsonParser.readTree(row.getValue()));
-            }
-            return jsonNodeMap;
-        } catch (IOException e) {
+        return getData(stockTicker, null);
+    }
+
+    /**
+     * Fetches the time series and quote summary data embedded in the ticker's quote page - scanned straight out of the
+     * page as it is read, without building its DOM.
+     *
+     * @param projection the part of each embedded JSON document to keep - or <code>null</code> to keep all of it.
+     * @return the embedded JSON, by the URL it was fetched from.
+     */
+    public Map<String, JsonNode> getData(String stockTicker, JsonPointer projection) {
+        URI quoteUri = quoteBaseUri.resolve("/quote/" + stockTicker);
+        try (InputStream pageStream = responseCache.fetch(buildFetchRequest(quoteUri))) {
+            return embeddedJsonScanner.scan(pageStream,
+                    url -> url.contains("finance/timeseries") || url.contains("finance/quoteSummary"), projection);
+        } catch (IOException | HttpRequestProcessor.RequestFailedException e) {
             throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted fetching " + stockTicker + "!", e);
         }
     }
 
     public JsonNode getStockData(String stockTicker) {
-        OffsetDateTime start = OffsetDateTime.now().minusMonths(6L);
-        OffsetDateTime end = OffsetDateTime.now();
-        String uri = URLDecoder.decode(urlFormat, StandardCharsets.UTF_8).formatted(stockTicker, start.toEpochSecond(), end.toEpochSecond())
-                .replace("$tic", stockTicker)
-                .replace("$start", Long.toString(start.toEpochSecond()))
-                .replace("$end", Long.toString(end.toEpochSecond()))
-                .replaceAll("\\|", "%7C");
-        URI dataUri = URI.create(uri);
-        try (InputStream responseStream =  new HttpRequestProcessor<InputStream>(httpClient)
-                .execute(buildFetchRequest(dataUri), HttpResponse.BodyHandlers.ofInputStream())) {
-            String responseData = GZipper.decompress(responseStream.readAllBytes());
+        return fetchStockData(stockTicker, RequestPriority.INTERACTIVE);
+    }
+
+    private JsonNode fetchStockData(String stockTicker, RequestPriority priority) {
+        URI dataUri = chartUri(stockTicker, OffsetDateTime.now().minusMonths(6L), OffsetDateTime.now());
+        try (InputStream responseStream = responseCache.fetch(buildFetchRequest(dataUri), priority)) {
             //Accept cookies to continue...
-            return jsonParser.readTree(responseData);
+            return jsonParser.readTree(responseStream);
+        } catch (IOException | HttpRequestProcessor.RequestFailedException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted fetching " + stockTicker + "!", e);
+        }
+    }
+
+    /**
+     * Fetches the last six months of 1-minute bars for the given ticker, decoding the chart response as it streams in,
+     * directly into primitive columns. Prefer this to {@link #getStockData(String)} for anything but ad-hoc inspection -
+     * the {@link JsonNode JSON tree} of a six month chart holds hundreds of thousands of boxed numbers.
+     *
+     * @param stockTicker the ticker symbol to fetch.
+     * @return the decoded {@link OhlcvSeries series}.
+     */
+    public OhlcvSeries getStockSeries(String stockTicker) {
+        return fetchSeries(stockTicker, OffsetDateTime.now().minusMonths(6L), OffsetDateTime.now(), RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Serves the last six months of 1-minute bars for the given ticker from {@link OhlcvStore the series store},
+     * fetching only the bars since the last one stored - the first call for a ticker fetches all six months. Closed
+     * bars are appended to the store; the bar still being traded is served, but not stored.
+     *
+     * @throws IllegalStateException if I was created without a series store.
+     */
+    public OhlcvSeries getStockSeriesIncrementally(String stockTicker) {
+        if (Objects.isNull(seriesStore)) {
+            throw new IllegalStateException("No series store configured! Can not fetch incrementally!");
+        }
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime start = now.minusMonths(6L);
+        long lastStored = seriesStore.lastTimestamp(stockTicker);
+        OffsetDateTime fetchStart = lastStored < start.toEpochSecond()
+                ? start
+                : OffsetDateTime.ofInstant(Instant.ofEpochSecond(lastStored + 1), ZoneOffset.UTC);
+        OhlcvSeries fetched = fetchSeries(stockTicker, fetchStart, now, RequestPriority.INTERACTIVE);
+        seriesStore.append(stockTicker, fetched, now.truncatedTo(ChronoUnit.MINUTES).toEpochSecond());
+        return seriesStore.read(stockTicker, start.toEpochSecond()).followedBy(fetched);
+    }
+
+    private OhlcvSeries fetchSeries(String stockTicker, OffsetDateTime start, OffsetDateTime end, RequestPriority priority) {
+        URI dataUri = chartUri(stockTicker, start, end);
+        try (InputStream responseStream = requestProcessor.execute(buildFetchRequest(dataUri), contentDecodingBodyHandler, priority)) {
+            return chartDataDecoder.decode(responseStream);
         } catch (IOException | HttpRequestProcessor.RequestFailedException e) {
             throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted fetching " + stockTicker + "!", e);
+        }
+    }
+
+    /**
+     * Fetches {@link #getStockData(String) the stock data} of many tickers concurrently - each on a virtual thread, with
+     * at most {@value #MAX_BATCH_IN_FLIGHT} fetches in flight across all batches. A ticker given twice, or already being
+     * fetched by another batch, is fetched only once. Batch fetches are {@link RequestPriority#BULK bulk} requests, so
+     * they never hold up interactive ones.
+     *
+     * @return the result of each distinct ticker, in the order they complete - a failed ticker does not stop the others.
+     */
+    public Stream<TickerResult<JsonNode>> getStockData(Collection<String> stockTickers) {
+        return fetchAll(stockTickers, stockDataInFlight, stockTicker -> fetchStockData(stockTicker, RequestPriority.BULK));
+    }
+
+    /**
+     * Fetches {@link #getStockSeries(String) the series} of many tickers concurrently - as
+     * {@link #getStockData(Collection)} does.
+     */
+    public Stream<TickerResult<OhlcvSeries>> getStockSeries(Collection<String> stockTickers) {
+        return fetchAll(stockTickers, stockSeriesInFlight, stockTicker -> fetchSeries(stockTicker,
+                OffsetDateTime.now().minusMonths(6L), OffsetDateTime.now(), RequestPriority.BULK));
+    }
+
+    /**
+     * Fetches each distinct ticker once - joining the fetch of any ticker already in the given in-flight map.
+     */
+    <T> Stream<TickerResult<T>> fetchAll(Collection<String> stockTickers, Map<String, CompletableFuture<T>> inFlight,
+                                         Function<String, T> fetch) {
+        List<String> distinctTickers = stockTickers.stream().distinct().toList();
+        BlockingQueue<TickerResult<T>> completed = new LinkedBlockingQueue<>();
+        for (String stockTicker : distinctTickers) {
+            CompletableFuture<T> created = new CompletableFuture<>();
+            CompletableFuture<T> existing = inFlight.putIfAbsent(stockTicker, created);
+            if (Objects.isNull(existing)) {
+                batchExecutor.execute(() -> fetchInBatch(stockTicker, fetch, created, inFlight));
+                existing = created;
+            }
+            existing.whenComplete((data, failure) -> completed.add(new TickerResult<>(stockTicker, data, failure)));
+        }
+        return Stream.generate(() -> nextCompleted(completed)).limit(distinctTickers.size());
+    }
+
+    private <T> void fetchInBatch(String stockTicker, Function<String, T> fetch, CompletableFuture<T> result,
+                                  Map<String, CompletableFuture<T>> inFlight) {
+        T data = null;
+        Throwable failure = null;
+        try {
+            batchPermits.acquire();
+            try {
+                data = fetch.apply(stockTicker);
+            } finally {
+                batchPermits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (Throwable e) {
+            //errors too - left incomplete, the ticker would stay in flight, and every batch waiting on it would hang
+            failure = e;
         }
+        //out of flight before completing - so a batch seeing it complete never joins it again
+        inFlight.remove(stockTicker, result);
+        if (Objects.isNull(failure)) {
+            result.complete(data);
+        } else {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private static <T> TickerResult<T> nextCompleted(BlockingQueue<TickerResult<T>> completed) {
+        try {
+            return completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for batch results!", e);
+        }
+    }
+
+    /**
+     * The outcome of fetching a single ticker in a batch - <code>failure</code> is <code>null</code> if it succeeded.
+     */
+    public record TickerResult<T>(String ticker, T data, Throwable failure) {
+
+        public boolean succeeded() {
+            return Objects.isNull(failure);
+        }
+    }
+
+    private URI chartUri(String stockTicker, OffsetDateTime start, OffsetDateTime end) {
+        //bars are by the minute - whole minutes make the same chart the same URI, and so cacheable
+        start = start.truncatedTo(ChronoUnit.MINUTES);
+        end = end.truncatedTo(ChronoUnit.MINUTES);
+        String uri = URLDecoder.decode(chartBaseUri.resolve(chartPathFormat).toString(), StandardCharsets.UTF_8)
+                .replace("$tic", stockTicker)
+                .replace("$start", Long.toString(start.toEpochSecond()))
+                .replace("$end", Long.toString(end.toEpochSecond()))
+                .replaceAll("\\|", "%7C");
+        return URI.create(uri);
     }
 
     private HttpRequest buildFetchRequest(URI dataUri) {
         return HttpRequest.newBuilder()
                 .GET()
                 .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
-                .header("Accept-Encoding", "gzip, deflate, br, zstd")
+                //only what we can decode - the body is decoded as it streams in
+                .header("Accept-Encoding", contentDecodingBodyHandler.acceptEncoding())
                 .header("Accept-Language", "en-GB,en;q=0.9")
                 .header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64)")
-                .uri(URI.create("https://finance.yahoo.com/quote/AAPL"))
+                .uri(dataUri)
                 .build();
     }
 
@@ -0,0 +1,125 @@
+package org.g5.yf.chart;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * I decode a Yahoo Finance chart response straight into an {@link OhlcvSeries columnar series}.
+ * <p>
+ * I walk the response token by token, and pull the <code>timestamp</code>, <code>open</code>, <code>high</code>,
+ * <code>low</code>, <code>close</code> and <code>volume</code> arrays directly into primitive columns. No
+ * {@code JsonNode} tree is ever built, so memory use is bounded by the size of the columns themselves - rather
+ * than by hundreds of thousands of boxed number nodes.
+ * <p>
+ * Only the first result, and the first quote indicator, of a response are decoded - which is all a single-ticker
+ * chart request returns.
+ */
+public class ChartDataDecoder {
+
+    private static final int INITIAL_COLUMN_CAPACITY = 1 << 12;
+
+    private final JsonMapper jsonMapper;
+
+    public ChartDataDecoder(JsonMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * Decodes the chart response available on the given stream. I do not close the stream.
+     *
+     * @param inputStream the (decompressed) chart response.
+     * @return the decoded series - {@link OhlcvSeries#empty(String) empty} if the response holds no bars.
+     */
+    public OhlcvSeries decode(InputStream inputStream) {
+        JsonParser parser = jsonMapper.createParser(inputStream);
+        try {
+            return decode(parser);
+        } catch (JacksonException e) {
+            throw new IllegalStateException("Failed reading chart data - broken JSON stream?", e);
+        }
+    }
+
+    private OhlcvSeries decode(JsonParser parser) {
+        String symbol = null;
+        long[] timestamps = null;
+        double[] open = null, high = null, low = null, close = null;
+        long[] volume = null;
+        for (JsonToken token = parser.nextToken(); Objects.nonNull(token); token = parser.nextToken()) {
+            if (token != JsonToken.PROPERTY_NAME) {
+                continue;
+            }
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            boolean isArray = value == JsonToken.START_ARRAY;
+            switch (name) {
+                case "symbol" -> symbol = Objects.isNull(symbol) && value == JsonToken.VALUE_STRING ? parser.getValueAsString() : symbol;
+                case "timestamp" -> timestamps = Objects.isNull(timestamps) && isArray ? readLongs(parser) : timestamps;
+                case "open" -> open = Objects.isNull(open) && isArray ? readDoubles(parser) : open;
+                case "high" -> high = Objects.isNull(high) && isArray ? readDoubles(parser) : high;
+                case "low" -> low = Objects.isNull(low) && isArray ? readDoubles(parser) : low;
+                case "close" -> close = Objects.isNull(close) && isArray ? readDoubles(parser) : close;
+                case "volume" -> volume = Objects.isNull(volume) && isArray ? readLongs(parser) : volume;
+                case "error" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        throw new IllegalStateException("Chart request failed! Error was: " + parser.readValueAsTree());
+                    }
+                }
+                default -> { }
+            }
+        }
+        if (Objects.isNull(timestamps) || timestamps.length == 0) {
+            return OhlcvSeries.empty(symbol);
+        }
+        int size = timestamps.length;
+        return new OhlcvSeries(symbol, timestamps,
+                orMissing(open, size), orMissing(high, size), orMissing(low, size), orMissing(close, size),
+                Objects.nonNull(volume) ? volume : new long[size]);
+    }
+
+    private static long[] readLongs(JsonParser parser) {
+        long[] values = new long[INITIAL_COLUMN_CAPACITY];
+        int size = 0;
+        for (JsonToken token = nextArrayToken(parser); token != JsonToken.END_ARRAY; token = nextArrayToken(parser)) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = token == JsonToken.VALUE_NULL ? 0L : parser.getLongValue();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private static double[] readDoubles(JsonParser parser) {
+        double[] values = new double[INITIAL_COLUMN_CAPACITY];
+        int size = 0;
+        for (JsonToken token = nextArrayToken(parser); token != JsonToken.END_ARRAY; token = nextArrayToken(parser)) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = token == JsonToken.VALUE_NULL ? Double.NaN : parser.getDoubleValue();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private static JsonToken nextArrayToken(JsonParser parser) {
+        JsonToken token = parser.nextToken();
+        if (Objects.isNull(token)) {
+            throw new IllegalStateException("Unexpected end of chart data - truncated response?");
+        }
+        return token;
+    }
+
+    private static double[] orMissing(double[] column, int size) {
+        if (Objects.nonNull(column)) {
+            return column;
+        }
+        double[] missing = new double[size];
+        Arrays.fill(missing, Double.NaN);
+        return missing;
+    }
+}
@@ -0,0 +1,154 @@
+package org.g5.yf.chart;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * I am a compact, columnar open-high-low-close-volume time series. Each column is a primitive array of identical
+ * length, so a series of several hundred thousand bars costs a few MB rather than the tens of MB a {@code JsonNode}
+ * tree of boxed numbers would.
+ * <p>
+ * Missing prices - Yahoo reports <code>null</code> for bars with no trades - are held as {@link Double#NaN NaN}, and
+ * missing volumes as <code>0</code>.
+ * <p>
+ * The column accessors return my backing arrays, not copies. Callers must treat them as read-only.
+ */
+public final class OhlcvSeries {
+
+    private static final long[] NO_LONGS = new long[0];
+    private static final double[] NO_DOUBLES = new double[0];
+
+    private final String symbol;
+    private final long[] timestamps;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final long[] volume;
+
+    public static OhlcvSeries empty(String symbol) {
+        return new OhlcvSeries(symbol, NO_LONGS, NO_DOUBLES, NO_DOUBLES, NO_DOUBLES, NO_DOUBLES, NO_LONGS);
+    }
+
+    public OhlcvSeries(String symbol, long[] timestamps, double[] open, double[] high, double[] low, double[] close, long[] volume) {
+        this.symbol = symbol;
+        this.timestamps = Objects.requireNonNull(timestamps, "timestamps");
+        this.open = checkLength("open", open, timestamps.length);
+        this.high = checkLength("high", high, timestamps.length);
+        this.low = checkLength("low", low, timestamps.length);
+        this.close = checkLength("close", close, timestamps.length);
+        this.volume = Objects.requireNonNull(volume, "volume");
+        if (volume.length != timestamps.length) {
+            throw new IllegalArgumentException("Column [volume] has %d values, expected %d!".formatted(volume.length, timestamps.length));
+        }
+    }
+
+    public String symbol() {
+        return symbol;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public boolean isEmpty() {
+        return timestamps.length == 0;
+    }
+
+    /**
+     * @return bar timestamps, in epoch-seconds.
+     */
+    public long[] timestamps() {
+        return timestamps;
+    }
+
+    public double[] open() {
+        return open;
+    }
+
+    public double[] high() {
+        return high;
+    }
+
+    public double[] low() {
+        return low;
+    }
+
+    public double[] close() {
+        return close;
+    }
+
+    public long[] volume() {
+        return volume;
+    }
+
+    /**
+     * @return the timestamp, in epoch-seconds, of my last bar - or {@link Long#MIN_VALUE} if I am empty.
+     */
+    public long lastTimestamp() {
+        return isEmpty() ? Long.MIN_VALUE : timestamps[timestamps.length - 1];
+    }
+
+    /**
+     * @return the index of my first bar after the given timestamp - {@link #size()} if there is none.
+     */
+    public int indexAfter(long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return a series of my bars followed by those bars of the later series that come after my last one - or me, if
+     * there are none.
+     */
+    public OhlcvSeries followedBy(OhlcvSeries later) {
+        int from = later.indexAfter(lastTimestamp());
+        if (from == later.size()) {
+            return this;
+        }
+        return new OhlcvSeries(Objects.requireNonNullElse(symbol, later.symbol),
+                concat(timestamps, later.timestamps, from),
+                concat(open, later.open, from),
+                concat(high, later.high, from),
+                concat(low, later.low, from),
+                concat(close, later.close, from),
+                concat(volume, later.volume, from));
+    }
+
+    @Override
+    public String toString() {
+        return OhlcvSeries.class.getSimpleName() + "{" +
+                "symbol='" + symbol + '\'' +
+                ", size=" + size() +
+                '}';
+    }
+
+    private static long[] concat(long[] values, long[] laterValues, int from) {
+        long[] concatenated = Arrays.copyOf(values, values.length + laterValues.length - from);
+        System.arraycopy(laterValues, from, concatenated, values.length, laterValues.length - from);
+        return concatenated;
+    }
+
+    private static double[] concat(double[] values, double[] laterValues, int from) {
+        double[] concatenated = Arrays.copyOf(values, values.length + laterValues.length - from);
+        System.arraycopy(laterValues, from, concatenated, values.length, laterValues.length - from);
+        return concatenated;
+    }
+
+    private static double[] checkLength(String column, double[] values, int expectedLength) {
+        Objects.requireNonNull(values, column);
+        if (values.length != expectedLength) {
+            throw new IllegalArgumentException("Column [%s] has %d values, expected %d!".formatted(column, values.length, expectedLength));
+        }
+        return values;
+    }
+}
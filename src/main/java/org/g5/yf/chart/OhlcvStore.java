@@ -0,0 +1,218 @@
+package org.g5.yf.chart;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * I keep {@link OhlcvSeries bars} on disk, per ticker, so a series need only ever be fetched once: after that, only
+ * the bars since the last one I hold. Each ticker is a directory of six column files - timestamps, open, high, low,
+ * close and volume - each a plain array of 8-byte big-endian values, appended to and never rewritten. Reads map the
+ * columns into memory, so reading a series costs one bulk copy per column and no parsing at all.
+ * <p>
+ * Bars are only ever appended in timestamp order; bars no later than my last are ignored. Columns are appended value
+ * columns first and timestamps last, and a ticker holds as many bars as its shortest column - so an append cut short by
+ * a crash is simply not there, and is repaired by the next append.
+ * <p>
+ * I am thread-safe within one JVM; appends to a ticker are serialised, and never block reads.
+ */
+public class OhlcvStore {
+
+    private static final int VALUE_BYTES = Long.BYTES;
+    private static final String[] COLUMNS = {"open", "high", "low", "close", "volume", "timestamps"};
+    private static final int TIMESTAMPS = 5;
+
+    private final Path directory;
+    private final Map<String, Object> tickerLocks = new ConcurrentHashMap<>();
+
+    public OhlcvStore(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can not use " + directory + " for the series store!", e);
+        }
+    }
+
+    /**
+     * @return the timestamp, in epoch-seconds, of the last bar I hold for the ticker - or {@link Long#MIN_VALUE} if I
+     * hold none.
+     */
+    public long lastTimestamp(String ticker) {
+        Path tickerDirectory = tickerDirectory(ticker);
+        try {
+            long rows = rows(tickerDirectory);
+            if (rows == 0) {
+                return Long.MIN_VALUE;
+            }
+            try (FileChannel timestamps = FileChannel.open(column(tickerDirectory, TIMESTAMPS), StandardOpenOption.READ)) {
+                ByteBuffer last = ByteBuffer.allocate(VALUE_BYTES);
+                while (last.hasRemaining()) {
+                    if (timestamps.read(last, (rows - 1) * VALUE_BYTES + last.position()) < 0) {
+                        throw new IOException("Unexpected end of timestamps for " + ticker + "!");
+                    }
+                }
+                return last.flip().getLong();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the last timestamp of " + ticker + "!", e);
+        }
+    }
+
+    /**
+     * Appends the bars of the series after my last one for the ticker, and before the given timestamp - a bar still
+     * being traded has not closed, and must not be stored.
+     *
+     * @param completeBefore the epoch-second before which a bar must start to be stored.
+     * @return the number of bars appended.
+     */
+    public int append(String ticker, OhlcvSeries series, long completeBefore) {
+        synchronized (tickerLocks.computeIfAbsent(ticker, t -> new Object())) {
+            Path tickerDirectory = tickerDirectory(ticker);
+            try {
+                Files.createDirectories(tickerDirectory);
+                long rows = repair(tickerDirectory);
+                int from = series.indexAfter(lastTimestamp(ticker));
+                int to = series.indexAfter(completeBefore - 1);
+                if (from >= to) {
+                    return 0;
+                }
+                long[] timestamps = series.timestamps();
+                double[][] prices = {series.open(), series.high(), series.low(), series.close()};
+                for (int column = 0; column < prices.length; column++) {
+                    ByteBuffer values = buffer(to - from);
+                    for (int i = from; i < to; i++) {
+                        values.putDouble(prices[column][i]);
+                    }
+                    write(tickerDirectory, column, rows, values);
+                }
+                write(tickerDirectory, 4, rows, longs(series.volume(), from, to));
+                write(tickerDirectory, TIMESTAMPS, rows, longs(timestamps, from, to));
+                return to - from;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append bars for " + ticker + "!", e);
+            }
+        }
+    }
+
+    /**
+     * @return the bars I hold for the ticker from the given timestamp on - empty if I hold none.
+     */
+    public OhlcvSeries read(String ticker, long fromTimestamp) {
+        Path tickerDirectory = tickerDirectory(ticker);
+        try {
+            long rows = rows(tickerDirectory);
+            if (rows == 0) {
+                return OhlcvSeries.empty(ticker);
+            }
+            Validate.isTrue(rows <= Integer.MAX_VALUE, "Too many bars stored for %s!", ticker);
+            MappedByteBuffer timestampColumn = map(tickerDirectory, TIMESTAMPS, rows);
+            int from = firstIndexFrom(timestampColumn, (int) rows, fromTimestamp);
+            int length = (int) rows - from;
+            long[] timestamps = new long[length];
+            timestampColumn.asLongBuffer().get(from, timestamps);
+            double[][] prices = new double[4][length];
+            for (int column = 0; column < prices.length; column++) {
+                map(tickerDirectory, column, rows).asDoubleBuffer().get(from, prices[column]);
+            }
+            long[] volume = new long[length];
+            map(tickerDirectory, 4, rows).asLongBuffer().get(from, volume);
+            return new OhlcvSeries(ticker, timestamps, prices[0], prices[1], prices[2], prices[3], volume);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read bars for " + ticker + "!", e);
+        }
+    }
+
+    private static int firstIndexFrom(MappedByteBuffer timestamps, int rows, long fromTimestamp) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps.getLong(mid * VALUE_BYTES) < fromTimestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of complete bars held - that of the shortest column.
+     */
+    private static long rows(Path tickerDirectory) throws IOException {
+        long rows = Long.MAX_VALUE;
+        for (int column = 0; column < COLUMNS.length; column++) {
+            Path columnFile = column(tickerDirectory, column);
+            rows = Math.min(rows, Files.exists(columnFile) ? Files.size(columnFile) / VALUE_BYTES : 0);
+        }
+        return rows;
+    }
+
+    /**
+     * Cuts any column longer than the rest - left so by an interrupted append - back to the bars held.
+     */
+    private static long repair(Path tickerDirectory) throws IOException {
+        long rows = rows(tickerDirectory);
+        for (int column = 0; column < COLUMNS.length; column++) {
+            try (FileChannel channel = FileChannel.open(column(tickerDirectory, column), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (channel.size() > rows * VALUE_BYTES) {
+                    channel.truncate(rows * VALUE_BYTES);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void write(Path tickerDirectory, int column, long rows, ByteBuffer values) throws IOException {
+        try (FileChannel channel = FileChannel.open(column(tickerDirectory, column), StandardOpenOption.WRITE)) {
+            values.flip();
+            long position = rows * VALUE_BYTES;
+            while (values.hasRemaining()) {
+                position += channel.write(values, position);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static MappedByteBuffer map(Path tickerDirectory, int column, long rows) throws IOException {
+        try (FileChannel channel = FileChannel.open(column(tickerDirectory, column), StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, rows * VALUE_BYTES);
+            mapped.order(ByteOrder.BIG_ENDIAN);
+            return mapped;
+        }
+    }
+
+    private static ByteBuffer buffer(int values) {
+        return ByteBuffer.allocate(values * VALUE_BYTES).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static ByteBuffer longs(long[] values, int from, int to) {
+        ByteBuffer buffer = buffer(to - from);
+        buffer.asLongBuffer().put(values, from, to - from);
+        return buffer.position(buffer.capacity());
+    }
+
+    private static Path column(Path tickerDirectory, int column) {
+        return tickerDirectory.resolve(COLUMNS[column] + ".col");
+    }
+
+    private Path tickerDirectory(String ticker) {
+        Objects.requireNonNull(ticker, "No ticker specified! Can not continue!");
+        //tickers such as ^GSPC or EURUSD=X are encoded to be safe as directory names
+        return directory.resolve(URLEncoder.encode(ticker, StandardCharsets.UTF_8).replace(".", "%2E"));
+    }
+}
@@ -0,0 +1,108 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * I stop requests to a host that keeps failing, so that callers fail fast instead of stalling on it - and the host gets
+ * a chance to recover. After a run of consecutive failures, a host's circuit opens, and requests to it are refused for
+ * a while; then a single trial request is let through, whose outcome closes the circuit again, or re-opens it.
+ * <p>
+ * Only upstream failures count - server errors, connection failures and timeouts. Client errors, including rate
+ * limiting, are still answers from a live host, so count as successes.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Map<String, HostCircuit> hostCircuits = new ConcurrentHashMap<>();
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        Validate.isTrue(failureThreshold > 0, "Failure threshold must be positive!");
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * @return empty if a request to the host may go ahead - else how long until the circuit will let one through.
+     */
+    public Optional<Duration> refusal(String host) {
+        return circuit(host).refusal();
+    }
+
+    /**
+     * Records the outcome of a request that was let through.
+     *
+     * @param failure the failure - or <code>null</code> if the request succeeded. A cancelled request counts as
+     *                neither, but frees the way for the next trial.
+     */
+    public void record(String host, Throwable failure) {
+        if (failure instanceof CancellationException) {
+            //the request was given up on - it says nothing of the host
+            circuit(host).abandon();
+            return;
+        }
+        circuit(host).record(host, Objects.nonNull(failure) && isUpstreamFailure(failure));
+    }
+
+    private HostCircuit circuit(String host) {
+        return hostCircuits.computeIfAbsent(host, h -> new HostCircuit());
+    }
+
+    private static boolean isUpstreamFailure(Throwable failure) {
+        return !(failure instanceof HttpRequestProcessor.RequestFailedException requestFailed)
+                || requestFailed.getResponseStatus().code() >= 500;
+    }
+
+    private final class HostCircuit {
+
+        private int consecutiveFailures;
+        //when the circuit may next let a trial request through - 0 while closed
+        private long openUntilNanos;
+        private boolean trialInFlight;
+
+        synchronized Optional<Duration> refusal() {
+            if (openUntilNanos == 0) {
+                return Optional.empty();
+            }
+            long remainingNanos = openUntilNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                return Optional.of(Duration.ofNanos(remainingNanos));
+            }
+            if (trialInFlight) {
+                return Optional.of(openDuration);
+            }
+            trialInFlight = true;
+            return Optional.empty();
+        }
+
+        synchronized void abandon() {
+            trialInFlight = false;
+        }
+
+        synchronized void record(String host, boolean failed) {
+            trialInFlight = false;
+            if (!failed) {
+                consecutiveFailures = 0;
+                openUntilNanos = 0;
+                return;
+            }
+            if (++consecutiveFailures >= failureThreshold) {
+                if (openUntilNanos == 0) {
+                    log.warn("Opening circuit for {} after {} consecutive failures.", host, consecutiveFailures);
+                }
+                openUntilNanos = System.nanoTime() + openDuration.toNanos();
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.g5.yf.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.lang.reflect.Constructor;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * I hand over a response body as an {@link InputStream} decoded according to its <code>Content-Encoding</code> - decoded
+ * incrementally, as bytes arrive, so a streaming parser can start on the first packet without the whole body ever being
+ * buffered.
+ * <p>
+ * I decode <code>gzip</code> and <code>deflate</code> out of the box, and <code>br</code> and <code>zstd</code> when
+ * a decoder library for them - Brotli's <code>org.brotli.dec</code>, or <code>zstd-jni</code> - is on the classpath;
+ * others can be {@link #withDecoder(String, Decoder) registered}. Advertise only what I can decode - see
+ * {@link #acceptEncoding()}. A body in an encoding I can't decode fails with an {@link IOException} when first read.
+ */
+public final class ContentDecodingBodyHandler implements HttpResponse.BodyHandler<InputStream> {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentDecodingBodyHandler.class);
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final String IDENTITY = "identity";
+    private static final ContentDecodingBodyHandler DEFAULT_HANDLER = new ContentDecodingBodyHandler(defaultDecoders());
+
+    /**
+     * I wrap an encoded stream in a decoding one.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        InputStream decode(InputStream encoded) throws IOException;
+    }
+
+    private final Map<String, Decoder> decoders;
+
+    private ContentDecodingBodyHandler(Map<String, Decoder> decoders) {
+        this.decoders = Collections.unmodifiableMap(decoders);
+    }
+
+    public static ContentDecodingBodyHandler defaultHandler() {
+        return DEFAULT_HANDLER;
+    }
+
+    /**
+     * @return a copy of me that also decodes the given encoding - replacing any decoder I have for it.
+     */
+    public ContentDecodingBodyHandler withDecoder(String contentEncoding, Decoder decoder) {
+        Map<String, Decoder> extendedDecoders = new LinkedHashMap<>(decoders);
+        extendedDecoders.put(contentEncoding.toLowerCase(Locale.ROOT), decoder);
+        return new ContentDecodingBodyHandler(extendedDecoders);
+    }
+
+    /**
+     * @return an <code>Accept-Encoding</code> header value listing exactly the encodings I can decode.
+     */
+    public String acceptEncoding() {
+        return String.join(", ", decoders.keySet());
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<InputStream> apply(HttpResponse.ResponseInfo responseInfo) {
+        String contentEncoding = responseInfo.headers().firstValue("Content-Encoding").orElse(IDENTITY);
+        //the mapping must not block - the stream only starts decoding, and reading, on the first read
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                encoded -> decoding(contentEncoding, encoded));
+    }
+
+    /**
+     * @return a stream decoding the given one - lazily, so no bytes are read until the stream is.
+     */
+    InputStream decoding(String contentEncoding, InputStream encoded) {
+        List<String> encodings = Arrays.stream(contentEncoding.split(","))
+                .map(encoding -> encoding.trim().toLowerCase(Locale.ROOT))
+                .filter(encoding -> !encoding.isEmpty() && !IDENTITY.equals(encoding))
+                .toList();
+        return encodings.isEmpty() ? encoded : new LazyDecodingInputStream(encoded, encodings);
+    }
+
+    private static Map<String, Decoder> defaultDecoders() {
+        Map<String, Decoder> decoders = new LinkedHashMap<>();
+        decoders.put("gzip", encoded -> new GZIPInputStream(encoded, BUFFER_SIZE));
+        decoders.put("x-gzip", encoded -> new GZIPInputStream(encoded, BUFFER_SIZE));
+        decoders.put("deflate", encoded -> new InflaterInputStream(encoded));
+        optionalDecoder("org.brotli.dec.BrotliInputStream").ifPresent(decoder -> decoders.put("br", decoder));
+        optionalDecoder("com.github.luben.zstd.ZstdInputStream").ifPresent(decoder -> decoders.put("zstd", decoder));
+        return decoders;
+    }
+
+    private static Optional<Decoder> optionalDecoder(String decodingStreamClassName) {
+        try {
+            Constructor<? extends InputStream> constructor = Class.forName(decodingStreamClassName)
+                    .asSubclass(InputStream.class)
+                    .getConstructor(InputStream.class);
+            return Optional.of(encoded -> {
+                try {
+                    return constructor.newInstance(encoded);
+                } catch (ReflectiveOperationException e) {
+                    throw new IOException("Failed to create decoder " + decodingStreamClassName + "!", e);
+                }
+            });
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            log.debug("Decoder {} not available.", decodingStreamClassName);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * I set up the decoder chain on first read - decoders such as gzip read their header as soon as they are created,
+     * which would otherwise block the HTTP client's thread.
+     */
+    private final class LazyDecodingInputStream extends InputStream {
+
+        private final InputStream encoded;
+        private final List<String> encodings;
+        private InputStream decoded;
+
+        private LazyDecodingInputStream(InputStream encoded, List<String> encodings) {
+            this.encoded = encoded;
+            this.encodings = encodings;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoded().read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return decoded().read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Objects.isNull(decoded) ? 0 : decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (Objects.nonNull(decoded)) {
+                decoded.close();
+            } else {
+                encoded.close();
+            }
+        }
+
+        private InputStream decoded() throws IOException {
+            if (Objects.isNull(decoded)) {
+                //an empty body - e.g. a HEAD response, or a 204 - has nothing to decode, not even a header
+                PushbackInputStream body = new PushbackInputStream(encoded, 1);
+                int first = body.read();
+                if (first < 0) {
+                    decoded = body;
+                    return decoded;
+                }
+                body.unread(first);
+                //encodings are listed in the order they were applied - so undo them in reverse
+                List<String> decodingOrder = new ArrayList<>(encodings);
+                Collections.reverse(decodingOrder);
+                InputStream stream = body;
+                for (String encoding : decodingOrder) {
+                    Decoder decoder = decoders.get(encoding);
+                    if (Objects.isNull(decoder)) {
+                        body.close();
+                        throw new IOException("Unsupported Content-Encoding: " + encoding + "!");
+                    }
+                    stream = decoder.decode(stream);
+                }
+                decoded = stream;
+            }
+            return decoded;
+        }
+    }
+}
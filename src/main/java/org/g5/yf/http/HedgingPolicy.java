@@ -0,0 +1,67 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * I decide when a slow request is hedged - duplicated, with whichever copy answers first winning. A request is hedged
+ * once it has been outstanding longer than a high percentile of recent latencies, so only the slow tail pays for a
+ * second request: hedging at the 95th percentile costs about 5% more requests, and cuts the tail to roughly the latency
+ * of two ordinary requests.
+ * <p>
+ * Only idempotent requests are hedged. Until enough latencies have been seen, no request is hedged.
+ */
+public class HedgingPolicy {
+
+    private static final int MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final Duration minDelay;
+    //a ring of the most recent latencies, in nanoseconds
+    private final long[] latencies;
+    private int samples;
+    private int next;
+
+    /**
+     * @param percentile the latency percentile after which to hedge, e.g. <code>95</code>.
+     * @param minDelay the least time to wait before hedging, however fast recent requests were.
+     * @param window how many recent latencies the percentile is taken over.
+     */
+    public HedgingPolicy(double percentile, Duration minDelay, int window) {
+        Validate.isTrue(percentile > 0 && percentile < 100, "Percentile must be between 0 and 100!");
+        Validate.isTrue(window >= MIN_SAMPLES, "Window must hold at least %d latencies!", MIN_SAMPLES);
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.latencies = new long[window];
+    }
+
+    public HedgingPolicy(double percentile, Duration minDelay) {
+        this(percentile, minDelay, 256);
+    }
+
+    public synchronized void recordLatency(Duration latency) {
+        latencies[next] = latency.toNanos();
+        next = (next + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+    }
+
+    /**
+     * @return how long to wait for a response before hedging - empty while too few latencies have been seen.
+     */
+    public Optional<Duration> hedgeDelay() {
+        long[] recent;
+        synchronized (this) {
+            if (samples < MIN_SAMPLES) {
+                return Optional.empty();
+            }
+            recent = Arrays.copyOf(latencies, samples);
+        }
+        Arrays.sort(recent);
+        int index = Math.min(recent.length - 1, (int) Math.ceil(percentile / 100 * recent.length) - 1);
+        Duration delay = Duration.ofNanos(recent[Math.max(0, index)]);
+        return Optional.of(delay.compareTo(minDelay) < 0 ? minDelay : delay);
+    }
+}
@@ -0,0 +1,113 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * I bound how many requests may be in flight to any one host at a time. Permits are handed out asynchronously - a
+ * request over the limit waits in a per-host queue, in arrival order, without holding a thread - so thousands of
+ * requests may be fanned out at once, while only a few actually hit each host.
+ * <p>
+ * I am thread-safe, and may be shared by any number of {@link HttpRequestProcessor processors}.
+ */
+public class HostConcurrencyLimiter {
+
+    private static final HostConcurrencyLimiter UNLIMITED = new HostConcurrencyLimiter(Integer.MAX_VALUE);
+
+    private final int maxConcurrentPerHost;
+    private final Map<String, HostPermits> hostPermits = new ConcurrentHashMap<>();
+
+    public HostConcurrencyLimiter(int maxConcurrentPerHost) {
+        Validate.isTrue(maxConcurrentPerHost > 0, "The concurrency limit must be positive!");
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+    }
+
+    /**
+     * @return a limiter that never makes a request wait.
+     */
+    public static HostConcurrencyLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @return a future completed with a permit as soon as one is free for the host - the permit must be
+     * {@link Permit#release() released} once the request completes.
+     */
+    public CompletableFuture<Permit> acquire(String host) {
+        return hostPermits.computeIfAbsent(host, h -> new HostPermits()).acquire();
+    }
+
+    /**
+     * @return the number of requests currently holding a permit for the host.
+     */
+    public int inFlight(String host) {
+        HostPermits permits = hostPermits.get(host);
+        return Objects.isNull(permits) ? 0 : permits.inFlight();
+    }
+
+    public interface Permit {
+        /**
+         * Returns the permit - only the first call has any effect.
+         */
+        void release();
+    }
+
+    private final class HostPermits {
+
+        private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+        private int inFlight;
+
+        CompletableFuture<Permit> acquire() {
+            synchronized (this) {
+                if (inFlight < maxConcurrentPerHost) {
+                    inFlight++;
+                    return CompletableFuture.completedFuture(newPermit());
+                }
+                CompletableFuture<Permit> waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+                return waiter;
+            }
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        private Permit newPermit() {
+            AtomicBoolean released = new AtomicBoolean();
+            return () -> {
+                if (released.compareAndSet(false, true)) {
+                    handOver();
+                }
+            };
+        }
+
+        /**
+         * Hands a released permit straight to the next waiter, if any - completed outside the lock, as completing runs
+         * the waiter's dependent stages.
+         */
+        private void handOver() {
+            while (true) {
+                CompletableFuture<Permit> waiter;
+                synchronized (this) {
+                    waiter = waiters.poll();
+                    if (Objects.isNull(waiter)) {
+                        inFlight--;
+                        return;
+                    }
+                }
+                //a waiter cancelled in the meantime doesn't take the permit - try the next
+                if (waiter.complete(newPermit())) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * I shape the rate of requests to each host with a token bucket: a host's bucket refills at a steady rate, up to a
+ * burst, and each request takes a token. A request finding the bucket empty waits - in a queue per
+ * {@link RequestPriority priority}, without holding a thread - until a token is free. Interactive requests are always
+ * let through before bulk ones, so a batch refresh never delays someone waiting on a response.
+ * <p>
+ * Sending at a rate the host sustains keeps it from throttling: a throttled host answers with <code>429</code>s, and
+ * retrying them only makes it worse. Should a host throttle anyway, {@link #backOff(String, Duration) backing off}
+ * empties its bucket and holds every request to it until the pause is over.
+ * <p>
+ * I am thread-safe, and may be shared by any number of {@link HttpRequestProcessor processors}.
+ */
+public class HostRateLimiter {
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    private final long nanosPerToken;
+    private final int burst;
+    private final Map<String, HostBucket> hostBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestsPerSecond the sustained rate of requests per host.
+     * @param burst how many requests may be sent at once to a host that has been idle.
+     */
+    public HostRateLimiter(double requestsPerSecond, int burst) {
+        Validate.isTrue(requestsPerSecond > 0, "The request rate must be positive!");
+        Validate.isTrue(burst > 0, "The burst must be positive!");
+        this.nanosPerToken = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        this.burst = burst;
+    }
+
+    /**
+     * @return a future completed as soon as the host's rate allows a request of the given priority to be sent.
+     */
+    public CompletableFuture<Void> acquire(String host, RequestPriority priority) {
+        return bucket(host).acquire(Objects.requireNonNull(priority, "No priority specified! Can not continue!"));
+    }
+
+    /**
+     * Holds every request to the host for the given pause - as when it answers with <code>429 Too Many Requests</code>.
+     */
+    public void backOff(String host, Duration pause) {
+        bucket(host).backOff(pause);
+    }
+
+    /**
+     * @return the number of requests waiting for the host's rate to allow them.
+     */
+    public int queued(String host) {
+        HostBucket bucket = hostBuckets.get(host);
+        return Objects.isNull(bucket) ? 0 : bucket.queued();
+    }
+
+    private HostBucket bucket(String host) {
+        return hostBuckets.computeIfAbsent(host, h -> new HostBucket());
+    }
+
+    private final class HostBucket {
+
+        //one queue per priority, highest priority first
+        private final List<Deque<CompletableFuture<Void>>> waiters = new ArrayList<>(PRIORITIES.length);
+        private double tokens = burst;
+        private long refilledNanos = System.nanoTime();
+        private long pausedUntilNanos = refilledNanos;
+        private boolean drainScheduled;
+
+        HostBucket() {
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                waiters.add(new ArrayDeque<>());
+            }
+        }
+
+        CompletableFuture<Void> acquire(RequestPriority priority) {
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (queued() == 0 && now >= pausedUntilNanos && tokens >= 1) {
+                    tokens--;
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> waiter = new CompletableFuture<>();
+                waiters.get(priority.ordinal()).add(waiter);
+                scheduleDrain(now);
+                return waiter;
+            }
+        }
+
+        synchronized void backOff(Duration pause) {
+            long now = System.nanoTime();
+            pausedUntilNanos = Math.max(pausedUntilNanos, now + pause.toNanos());
+            tokens = 0;
+            refilledNanos = now;
+        }
+
+        synchronized int queued() {
+            return waiters.stream().mapToInt(Deque::size).sum();
+        }
+
+        /**
+         * Lets through as many waiters as there are tokens for, highest priority first - completed outside the lock,
+         * as completing runs the waiters' dependent stages.
+         */
+        private void drain() {
+            List<CompletableFuture<Void>> ready = new ArrayList<>();
+            synchronized (this) {
+                drainScheduled = false;
+                long now = System.nanoTime();
+                refill(now);
+                while (now >= pausedUntilNanos && tokens >= 1) {
+                    CompletableFuture<Void> waiter = nextWaiter();
+                    if (Objects.isNull(waiter)) {
+                        break;
+                    }
+                    tokens--;
+                    ready.add(waiter);
+                }
+                if (queued() > 0) {
+                    scheduleDrain(now);
+                }
+            }
+            ready.forEach(waiter -> waiter.complete(null));
+        }
+
+        /**
+         * @return the next waiter still waiting, highest priority first - or null if there is none. A waiter given up
+         * on in the meantime doesn't take a token.
+         */
+        private CompletableFuture<Void> nextWaiter() {
+            for (Deque<CompletableFuture<Void>> queue : waiters) {
+                for (CompletableFuture<Void> waiter = queue.poll(); Objects.nonNull(waiter); waiter = queue.poll()) {
+                    if (!waiter.isDone()) {
+                        return waiter;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void scheduleDrain(long now) {
+            if (drainScheduled) {
+                return;
+            }
+            long untilToken = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerToken);
+            long delay = Math.max(untilToken, pausedUntilNanos - now);
+            drainScheduled = true;
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(this::drain);
+        }
+
+        private void refill(long now) {
+            //no tokens accrue while paused
+            long from = Math.max(refilledNanos, pausedUntilNanos);
+            if (now > from) {
+                tokens = Math.min(burst, tokens + (double) (now - from) / nanosPerToken);
+            }
+            refilledNanos = Math.max(refilledNanos, now);
+        }
+    }
+}
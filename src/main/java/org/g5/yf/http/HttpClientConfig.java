@@ -0,0 +1,162 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * I configure the {@link HttpClient} shared by {@link HttpRequestProcessor processors}: HTTP version, timeouts,
+ * executor and connection reuse. By default a client prefers HTTP/2 - so a fan-out of hundreds of requests to a host is
+ * multiplexed as streams over one connection, rather than each needing a connection of its own - and runs its
+ * asynchronous work on virtual threads.
+ * <p>
+ * Keep-alive, pool size and streams per connection are not settings of a client, but of the JDK's HTTP client
+ * implementation as a whole: they are set as the <code>jdk.httpclient.*</code> system properties, which the
+ * implementation reads once - so they apply to every client in the JVM, and only if set before the first client is
+ * created. A property already set - e.g. on the command line - is left as it is.
+ */
+public final class HttpClientConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    static final String HTTP2_KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout.h2";
+    static final String CONNECTION_POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+    static final String MAX_STREAMS_PROPERTY = "jdk.httpclient.maxstreams";
+
+    private final HttpClient.Version version;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final Executor executor;
+    private final HttpClient.Redirect redirect;
+    //the JVM-wide jdk.httpclient.* properties to set
+    private final Map<String, String> implementationProperties;
+
+    private HttpClientConfig(Builder builder) {
+        this.version = builder.version;
+        this.connectTimeout = builder.connectTimeout;
+        this.requestTimeout = builder.requestTimeout;
+        this.executor = builder.executor;
+        this.redirect = builder.redirect;
+        this.implementationProperties = Map.copyOf(builder.implementationProperties);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a new client, configured as I am - setting the JVM-wide <code>jdk.httpclient.*</code> properties first.
+     */
+    public HttpClient newHttpClient() {
+        implementationProperties.forEach(HttpClientConfig::setPropertyIfAbsent);
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .followRedirects(redirect)
+                .executor(Objects.requireNonNullElseGet(executor, Executors::newVirtualThreadPerTaskExecutor))
+                .build();
+    }
+
+    /**
+     * @return the timeout for each request - to be applied by the {@link HttpRequestProcessor.Builder#requestTimeout(Duration) processor}.
+     */
+    public Duration requestTimeout() {
+        return requestTimeout;
+    }
+
+    private static void setPropertyIfAbsent(String name, String value) {
+        String current = System.getProperty(name);
+        if (Objects.isNull(current)) {
+            System.setProperty(name, value);
+        } else if (!current.equals(value)) {
+            log.info("Leaving {} at {} - not setting it to {}.", name, current, value);
+        }
+    }
+
+    public static final class Builder {
+
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(30);
+        private Executor executor;
+        private HttpClient.Redirect redirect = HttpClient.Redirect.NORMAL;
+        private final Map<String, String> implementationProperties = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the preferred version - HTTP/2 by default, falling back to HTTP/1.1 for servers that don't speak it.
+         */
+        public Builder version(HttpClient.Version version) {
+            this.version = Objects.requireNonNull(version, "No HTTP version specified! Can not continue!");
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            Validate.isTrue(connectTimeout.isPositive(), "Connect timeout must be positive!");
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            Validate.isTrue(requestTimeout.isPositive(), "Request timeout must be positive!");
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the executor for the client's asynchronous work - a new virtual thread per task by default.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "No executor specified! Can not continue!");
+            return this;
+        }
+
+        public Builder redirect(HttpClient.Redirect redirect) {
+            this.redirect = Objects.requireNonNull(redirect, "No redirect policy specified! Can not continue!");
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept open for reuse - JVM-wide, for HTTP/1.1 and HTTP/2 alike.
+         */
+        public Builder keepAlive(Duration keepAlive) {
+            Validate.isTrue(keepAlive.isPositive(), "Keep-alive must be positive!");
+            implementationProperties.put(KEEP_ALIVE_PROPERTY, Long.toString(keepAlive.toSeconds()));
+            implementationProperties.put(HTTP2_KEEP_ALIVE_PROPERTY, Long.toString(keepAlive.toSeconds()));
+            return this;
+        }
+
+        /**
+         * Bounds the number of idle HTTP/1.1 connections kept for reuse - JVM-wide.
+         */
+        public Builder maxPooledConnections(int maxPooledConnections) {
+            Validate.isTrue(maxPooledConnections > 0, "The pool size must be positive!");
+            implementationProperties.put(CONNECTION_POOL_SIZE_PROPERTY, Integer.toString(maxPooledConnections));
+            return this;
+        }
+
+        /**
+         * Bounds the number of concurrent streams a server may open to the client per HTTP/2 connection - JVM-wide.
+         */
+        public Builder maxStreamsPerConnection(int maxStreamsPerConnection) {
+            Validate.isTrue(maxStreamsPerConnection > 0, "The stream limit must be positive!");
+            implementationProperties.put(MAX_STREAMS_PROPERTY, Integer.toString(maxStreamsPerConnection));
+            return this;
+        }
+
+        public HttpClientConfig build() {
+            return new HttpClientConfig(this);
+        }
+    }
+}
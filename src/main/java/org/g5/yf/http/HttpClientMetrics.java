@@ -0,0 +1,65 @@
+package org.g5.yf.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * I record what {@link HttpRequestProcessor processors} send over their {@link HttpClient}, per host:
+ * <ul>
+ *     <li><code>http.client.streams.active</code> - the requests in flight; over HTTP/2, each is a stream multiplexed
+ *     on the host's connection.</li>
+ *     <li><code>http.client.responses</code> - the responses received, tagged with the version the connection
+ *     negotiated - <code>none</code> for requests that got no response - so a host that never speaks HTTP/2, and so
+ *     needs a connection per concurrent request, stands out.</li>
+ * </ul>
+ * The JDK's client does not expose its connections, so I count the streams that occupy them instead.
+ * <p>
+ * I am thread-safe, and may be shared by any number of processors.
+ */
+public class HttpClientMetrics {
+
+    static final String ACTIVE_STREAMS = "http.client.streams.active";
+    static final String RESPONSES = "http.client.responses";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> activeStreams = new ConcurrentHashMap<>();
+
+    public HttpClientMetrics(MeterRegistry registry) {
+        this.registry = Objects.requireNonNull(registry, "No meter registry specified! Can not continue!");
+    }
+
+    /**
+     * @return the requests to the host currently in flight.
+     */
+    public int activeStreams(String host) {
+        AtomicInteger streams = activeStreams.get(host);
+        return Objects.isNull(streams) ? 0 : streams.get();
+    }
+
+    void requestStarted(String host) {
+        streams(host).incrementAndGet();
+    }
+
+    /**
+     * @param version the version of the response - <code>null</code> if the request failed without one.
+     */
+    void requestCompleted(String host, HttpClient.Version version) {
+        streams(host).decrementAndGet();
+        Counter.builder(RESPONSES)
+                .tags(Tags.of("host", host, "version", Objects.isNull(version) ? "none" : version.name()))
+                .register(registry)
+                .increment();
+    }
+
+    private AtomicInteger streams(String host) {
+        return activeStreams.computeIfAbsent(host,
+                key -> registry.gauge(ACTIVE_STREAMS, Tags.of("host", key), new AtomicInteger()));
+    }
+}
@@ -1,51 +1,468 @@
 package org.g5.yf.http;
 
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+/**
+ * I execute HTTP requests on a shared {@link HttpClient}, and turn anything but a 2xx response into a
+ * {@link RequestFailedException}. Requests are executed {@link #executeAsync(HttpRequest, HttpResponse.BodyHandler) asynchronously}
+ * underneath - {@link #execute(HttpRequest, HttpResponse.BodyHandler) blocking} execution simply waits - so one client
+ * can have thousands of requests outstanding, while my {@link HostConcurrencyLimiter limiter} bounds how many are actually
+ * in flight to each host.
+ * <p>
+ * A request counts as in flight until its body handler completes - for streaming handlers, such as
+ * {@link HttpResponse.BodyHandlers#ofInputStream() ofInputStream}, that is as soon as the response headers arrive.
+ * <p>
+ * Optionally, I make requests resilient:<ul>
+ * <li>a {@link RetryPolicy retry policy} retries transient failures, with jittered backoff;</li>
+ * <li>a {@link HedgingPolicy hedging policy} duplicates requests that are slower than usual, taking whichever copy
+ * answers first;</li>
+ * <li>a {@link CircuitBreaker circuit breaker} fails requests to a failing host fast, rather than letting them stall.</li>
+ * </ul>
+ * and, optionally, I keep to a {@link HostRateLimiter rate limit} per host - letting {@link RequestPriority#INTERACTIVE
+ * interactive} requests through before bulk ones, and backing off a host that throttles with a <code>429</code>.
+ *
+ * @param <T> the type of response body.
+ */
 public class HttpRequestProcessor<T> {
 
+    private static final Logger log = LoggerFactory.getLogger(HttpRequestProcessor.class);
+
+    //how long to hold requests to a host that throttles without saying for how long
+    private static final Duration DEFAULT_THROTTLE_BACK_OFF = Duration.ofSeconds(1);
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE");
+
     private final HttpClient httpClient;
+    private final HostConcurrencyLimiter concurrencyLimiter;
+    private final Duration requestTimeout;
+    //all optional - null when not in use
+    private final RetryPolicy retryPolicy;
+    private final HedgingPolicy hedgingPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final HostRateLimiter rateLimiter;
+    private final HttpClientMetrics metrics;
 
     public HttpRequestProcessor(HttpClient httpClient) {
-        this.httpClient = httpClient;
+        this(httpClient, HostConcurrencyLimiter.unlimited(), null);
+    }
+
+    public HttpRequestProcessor(HttpClient httpClient, HostConcurrencyLimiter concurrencyLimiter, Duration requestTimeout) {
+        this(httpClient, concurrencyLimiter, requestTimeout, null, null, null, null, null);
+    }
+
+    private HttpRequestProcessor(HttpClient httpClient, HostConcurrencyLimiter concurrencyLimiter, Duration requestTimeout,
+                                 RetryPolicy retryPolicy, HedgingPolicy hedgingPolicy, CircuitBreaker circuitBreaker,
+                                 HostRateLimiter rateLimiter, HttpClientMetrics metrics) {
+        this.httpClient = Objects.requireNonNull(httpClient, "No HTTP client specified! Can not continue!");
+        this.concurrencyLimiter = Objects.requireNonNull(concurrencyLimiter, "No concurrency limiter specified! Can not continue!");
+        this.requestTimeout = requestTimeout;
+        this.retryPolicy = retryPolicy;
+        this.hedgingPolicy = hedgingPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+    }
+
+    public static <T> Builder<T> builder(HttpClient httpClient) {
+        return new Builder<>(httpClient);
     }
 
-    public T execute(HttpRequest httpRequest, HttpResponse.BodyHandler<T> responseHandler) throws RequestFailedException {
+    /**
+     * Executes the request, waiting for its response.
+     *
+     * @throws RequestFailedException if the request could not be executed, or its response was not a 2xx.
+     * @throws InterruptedException if interrupted while waiting - the request is then cancelled.
+     */
+    public T execute(HttpRequest httpRequest, HttpResponse.BodyHandler<T> responseHandler) throws RequestFailedException, InterruptedException {
+        return execute(httpRequest, responseHandler, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Executes the request at the given priority, waiting for its response.
+     *
+     * @see #execute(HttpRequest, HttpResponse.BodyHandler)
+     */
+    public T execute(HttpRequest httpRequest, HttpResponse.BodyHandler<T> responseHandler, RequestPriority priority)
+            throws RequestFailedException, InterruptedException {
+        CompletableFuture<T> response = executeAsync(httpRequest, responseHandler, priority);
         try {
-            HttpResponse<T> httpResponse = this.httpClient.send(httpRequest, responseHandler);
-            //check status and report exception or return result
-            HttpStatus responseStatus = HttpStatus.resolve(httpResponse.statusCode());
-            if(responseStatus.isOkStatus()){
-                return httpResponse.body();
-            } else {
-                throw new RequestFailedException(responseStatus, "failed");
-            }
-        } catch (IOException ioe) {
-            throw new RequestFailedException(HttpStatus.BAD_GATEWAY, "Failed to get response!", ioe);
+            return response.get();
         } catch (InterruptedException e) {
-            Thread.interrupted();//clear interrupt
+            response.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RequestFailedException requestFailed) {
+                throw requestFailed;
+            }
+            throw new RequestFailedException(HttpStatus.BAD_GATEWAY, "Failed to get response!", e.getCause());
+        }
+    }
+
+    /**
+     * Executes the request once a permit for its host is free - retrying, hedging and circuit breaking as configured.
+     * Cancelling the future returned cancels the request: waits for a permit, sends, and retries or hedges not yet made.
+     *
+     * @return the response body - or a future failed with a {@link RequestFailedException}, if the request could not be
+     * executed or its response was not a 2xx.
+     */
+    public CompletableFuture<T> executeAsync(HttpRequest httpRequest, HttpResponse.BodyHandler<T> responseHandler) {
+        return executeAsync(httpRequest, responseHandler, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Executes the request at the given priority.
+     *
+     * @see #executeAsync(HttpRequest, HttpResponse.BodyHandler)
+     */
+    public CompletableFuture<T> executeAsync(HttpRequest httpRequest, HttpResponse.BodyHandler<T> responseHandler, RequestPriority priority) {
+        Objects.requireNonNull(priority, "No priority specified! Can not continue!");
+        CompletableFuture<T> response = new CompletableFuture<>();
+        Execution execution = new Execution(response);
+        attempt(withTimeout(httpRequest), responseHandler, priority, 1, execution).whenComplete((body, failure) -> {
+            if (Objects.nonNull(failure)) {
+                response.completeExceptionally(unwrap(failure));
+            } else if (!response.complete(body)) {
+                closeQuietly(body);//cancelled in the meantime - the body is never read
+            }
+        });
+        response.whenComplete((body, failure) -> {
+            if (response.isCancelled()) {
+                execution.cancel();
+            }
+        });
+        return response;
+    }
+
+    static boolean isIdempotent(HttpRequest httpRequest) {
+        return IDEMPOTENT_METHODS.contains(httpRequest.method());
+    }
+
+    private CompletableFuture<T> attempt(HttpRequest request, HttpResponse.BodyHandler<T> responseHandler, RequestPriority priority,
+                                         int attempt, Execution execution) {
+        return hedged(request, responseHandler, priority, execution).handle((body, failure) -> {
+            if (Objects.isNull(failure)) {
+                return CompletableFuture.completedFuture(body);
+            }
+            Throwable cause = unwrap(failure);
+            if (Objects.nonNull(retryPolicy) && retryPolicy.shouldRetry(request, attempt, cause)) {
+                Duration delay = retryPolicy.delayBefore(attempt, cause);
+                log.debug("Attempt {} of {} failed - retrying in {}ms.", attempt, request.uri(), delay.toMillis(), cause);
+                return execution.track(CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS)))
+                        .thenCompose(retry -> attempt(request, responseHandler, priority, attempt + 1, execution));
+            }
+            return CompletableFuture.<T>failedFuture(cause);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Sends the request - and, if it is outstanding for longer than the hedging policy allows, a copy of it. The first
+     * success wins; the request fails only once every copy sent has failed.
+     */
+    private CompletableFuture<T> hedged(HttpRequest request, HttpResponse.BodyHandler<T> responseHandler, RequestPriority priority,
+                                        Execution execution) {
+        Optional<Duration> hedgeDelay = Objects.isNull(hedgingPolicy) || !isIdempotent(request) ? Optional.empty() : hedgingPolicy.hedgeDelay();
+        if (hedgeDelay.isEmpty()) {
+            return sendOnce(request, responseHandler, priority, execution);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        //once none is outstanding the result is failed - and it stays at none, so no hedge is sent after
+        AtomicInteger outstanding = new AtomicInteger(1);
+        BiConsumer<T, Throwable> onCopyComplete = (body, failure) -> {
+            if (Objects.isNull(failure)) {
+                if (!result.complete(body)) {
+                    closeQuietly(body);//the losing copy's body is never read
+                }
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(unwrap(failure));
+            }
+        };
+        sendOnce(request, responseHandler, priority, execution).whenComplete(onCopyComplete);
+        CompletableFuture.delayedExecutor(hedgeDelay.get().toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+            if (!result.isDone() && !execution.isCancelled() && outstanding.getAndUpdate(n -> n == 0 ? 0 : n + 1) > 0) {
+                log.debug("Hedging {} after {}ms.", request.uri(), hedgeDelay.get().toMillis());
+                sendOnce(request, responseHandler, priority, execution).whenComplete(onCopyComplete);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<T> sendOnce(HttpRequest request, HttpResponse.BodyHandler<T> responseHandler, RequestPriority priority,
+                                          Execution execution) {
+        String host = Objects.requireNonNullElse(request.uri().getHost(), "");
+        if (Objects.nonNull(circuitBreaker)) {
+            Optional<Duration> refusal = circuitBreaker.refusal(host);
+            if (refusal.isPresent()) {
+                return CompletableFuture.failedFuture(new CircuitOpenException(host, refusal.get()));
+            }
+        }
+        CompletableFuture<Void> rateAllowed = Objects.isNull(rateLimiter)
+                ? CompletableFuture.completedFuture(null)
+                : rateLimiter.acquire(host, priority);
+        CompletableFuture<T> response = execution.track(rateAllowed)
+                .thenCompose(allowed -> execution.track(concurrencyLimiter.acquire(host)))
+                .thenCompose(permit -> {
+                    //a permit handed over just as the request was cancelled
+                    if (execution.isCancelled()) {
+                        permit.release();
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(new CancellationException());
+                    }
+                    long sentNanos = System.nanoTime();
+                    if (Objects.nonNull(metrics)) {
+                        metrics.requestStarted(host);
+                    }
+                    return execution.track(send(request, responseHandler))
+                            .whenComplete((httpResponse, failure) -> {
+                                permit.release();
+                                if (Objects.nonNull(metrics)) {
+                                    metrics.requestCompleted(host, Objects.isNull(failure) ? httpResponse.version() : null);
+                                }
+                                if (Objects.nonNull(hedgingPolicy) && Objects.isNull(failure)) {
+                                    hedgingPolicy.recordLatency(Duration.ofNanos(System.nanoTime() - sentNanos));
+                                }
+                            });
+                })
+                .handle((httpResponse, failure) -> {
+                    if (Objects.nonNull(failure)) {
+                        throw new CompletionException(asRequestFailure(unwrap(failure)));
+                    }
+                    if (execution.isCancelled()) {
+                        //an unread streaming body would hold on to its connection
+                        closeQuietly(httpResponse.body());
+                        throw new CancellationException("Request to " + request.uri() + " cancelled!");
+                    }
+                    return bodyOf(httpResponse);
+                });
+        if (Objects.nonNull(circuitBreaker)) {
+            response.whenComplete((body, failure) -> circuitBreaker.record(host, Objects.isNull(failure) ? null : unwrap(failure)));
+        }
+        if (Objects.nonNull(rateLimiter)) {
+            response.whenComplete((body, failure) -> {
+                if (Objects.nonNull(failure) && unwrap(failure) instanceof RequestFailedException requestFailed
+                        && requestFailed.getResponseStatus() == HttpStatus.TOO_MANY_REQUESTS) {
+                    rateLimiter.backOff(host, requestFailed.getRetryAfter().orElse(DEFAULT_THROTTLE_BACK_OFF));
+                }
+            });
+        }
+        return response;
+    }
+
+    private CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> responseHandler) {
+        try {
+            return httpClient.sendAsync(request, responseHandler);
+        } catch (RuntimeException e) {
+            //e.g. an unsupported scheme - failed like any other send, so the permit is still released
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private HttpRequest withTimeout(HttpRequest httpRequest) {
+        if (Objects.isNull(requestTimeout) || httpRequest.timeout().isPresent()) {
+            return httpRequest;
         }
-        return null;
+        return HttpRequest.newBuilder(httpRequest, (name, value) -> true).timeout(requestTimeout).build();
     }
 
-    public static final class RequestFailedException extends Exception {
+    private T bodyOf(HttpResponse<T> httpResponse) {
+        //check status and report exception or return result
+        HttpStatus responseStatus = HttpStatus.resolve(httpResponse.statusCode());
+        if (responseStatus.isOkStatus()) {
+            return httpResponse.body();
+        }
+        //an unread streaming body would hold on to its connection
+        closeQuietly(httpResponse.body());
+        throw new CompletionException(new RequestFailedException(responseStatus,
+                "Request to %s failed with status %d".formatted(httpResponse.uri(), httpResponse.statusCode()), null,
+                httpResponse.headers().firstValue("Retry-After").flatMap(RetryPolicy::parseRetryAfter).orElse(null)));
+    }
+
+    private static void closeQuietly(Object body) {
+        if (body instanceof AutoCloseable closeableBody) {
+            try {
+                closeableBody.close();
+            } catch (Exception e) {
+                log.debug("Failed to close response body.", e);
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && Objects.nonNull(failure.getCause()) ? failure.getCause() : failure;
+    }
+
+    private static Throwable asRequestFailure(Throwable failure) {
+        if (failure instanceof HttpTimeoutException) {
+            return new RequestFailedException(HttpStatus.GATEWAY_TIMEOUT, "Timed out waiting for response!", failure);
+        } else if (failure instanceof IOException) {
+            return new RequestFailedException(HttpStatus.BAD_GATEWAY, "Failed to get response!", failure);
+        }
+        return failure;
+    }
+
+    /**
+     * I track the stages in progress for one execution - waits for the rate and a permit, sends, and retry delays - so
+     * that cancelling the response future cancels them too: cancellation does not travel back up a chain of dependent
+     * futures by itself.
+     */
+    private static final class Execution {
+
+        private final CompletableFuture<?> response;
+        private final Set<CompletableFuture<?>> inProgress = ConcurrentHashMap.newKeySet();
+
+        private Execution(CompletableFuture<?> response) {
+            this.response = response;
+        }
+
+        boolean isCancelled() {
+            return response.isCancelled();
+        }
+
+        <F extends CompletableFuture<?>> F track(F stage) {
+            inProgress.add(stage);
+            stage.whenComplete((result, failure) -> inProgress.remove(stage));
+            //cancelled before the stage was tracked
+            if (isCancelled()) {
+                stage.cancel(true);
+            }
+            return stage;
+        }
+
+        void cancel() {
+            inProgress.forEach(stage -> stage.cancel(true));
+        }
+    }
+
+    public static final class Builder<T> {
+
+        private final HttpClient httpClient;
+        private HostConcurrencyLimiter concurrencyLimiter = HostConcurrencyLimiter.unlimited();
+        private Duration requestTimeout;
+        private RetryPolicy retryPolicy;
+        private HedgingPolicy hedgingPolicy;
+        private CircuitBreaker circuitBreaker;
+        private HostRateLimiter rateLimiter;
+        private HttpClientMetrics metrics;
+
+        private Builder(HttpClient httpClient) {
+            this.httpClient = httpClient;
+        }
+
+        /**
+         * Limits concurrent requests per host - share the limiter between processors to share the limit.
+         */
+        public Builder<T> concurrencyLimiter(HostConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for requests that don't set their own.
+         */
+        public Builder<T> requestTimeout(Duration requestTimeout) {
+            Validate.isTrue(requestTimeout.isPositive(), "Request timeout must be positive!");
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public Builder<T> retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public Builder<T> hedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * Breaks circuits to failing hosts - share the breaker between processors to share what they learn of each host.
+         */
+        public Builder<T> circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Limits the rate of requests per host - share the limiter between processors to share the rate.
+         */
+        public Builder<T> rateLimiter(HostRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Records active streams and responses per host - share the metrics between processors to share the counts.
+         */
+        public Builder<T> metrics(HttpClientMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public HttpRequestProcessor<T> build() {
+            return new HttpRequestProcessor<>(httpClient, concurrencyLimiter, requestTimeout, retryPolicy, hedgingPolicy, circuitBreaker,
+                    rateLimiter, metrics);
+        }
+    }
+
+    public static class RequestFailedException extends Exception {
 
         private final HttpStatus responseStatus;
+        private final Duration retryAfter;
 
         public RequestFailedException(HttpStatus responseStatus, String message) {
             this(responseStatus, message, null);
         }
 
         public RequestFailedException(HttpStatus responseStatus, String message, Throwable cause) {
+            this(responseStatus, message, cause, null);
+        }
+
+        public RequestFailedException(HttpStatus responseStatus, String message, Throwable cause, Duration retryAfter) {
             super(message, cause);
             this.responseStatus = responseStatus;
+            this.retryAfter = retryAfter;
         }
 
         public HttpStatus getResponseStatus() {
             return responseStatus;
         }
+
+        /**
+         * @return how long the server asked to wait before retrying - empty if it didn't say.
+         */
+        public Optional<Duration> getRetryAfter() {
+            return Optional.ofNullable(retryAfter);
+        }
+    }
+
+    /**
+     * Fails a request refused by an open {@link CircuitBreaker circuit} - as a <code>503</code>, retry-after the time
+     * left until the circuit lets a trial through. The request was never sent, and is never retried: the circuit is
+     * there to fail fast.
+     */
+    public static final class CircuitOpenException extends RequestFailedException {
+
+        public CircuitOpenException(String host, Duration openFor) {
+            super(HttpStatus.SERVICE_UNAVAILABLE, "Circuit open for " + host + "!", null, openFor);
+        }
     }
 }
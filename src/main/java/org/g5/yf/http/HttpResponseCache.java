@@ -0,0 +1,576 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * I cache the bodies of <code>GET</code> responses, so a page or chart requested many times a minute is fetched from
+ * upstream only once per freshness period - and, after that, only revalidated:<ul>
+ * <li>a response is fresh for its <code>Cache-Control: max-age</code>, or else my default time to live;</li>
+ * <li>a stale response carrying an <code>ETag</code> or <code>Last-Modified</code> is revalidated with a conditional
+ * request - a <code>304 Not Modified</code> costs headers only, and makes it fresh again;</li>
+ * <li>concurrent requests for the same URI share one upstream request - single flight - rather than each sending
+ * their own.</li>
+ * </ul>
+ * Entries are held in memory, least recently used first out once over my size bound, and dropped once they have been
+ * stale for longer than I retain stale entries. Optionally, entries are also written through to a directory - one file
+ * per URI, named by its SHA-256 - so they survive restarts and memory eviction. The directory is swept as it grows:
+ * entries no longer worth keeping are deleted, then the least recently written, until it is back within its size bound.
+ * <p>
+ * Bodies are stored decoded - see {@link ContentDecodingBodyHandler} - and keyed by URI alone: every request I am given
+ * is expected to negotiate the same representation. Responses marked <code>no-store</code> are never stored.
+ * <p>
+ * I am thread-safe. Upstream requests go through the given {@link HttpRequestProcessor processor}, so they are limited,
+ * retried and circuit broken like any other.
+ */
+public class HttpResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpResponseCache.class);
+
+    private static final int DISK_FORMAT_VERSION = 1;
+    //what an entry costs beyond its body - the key, the validators and the bookkeeping
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final String DISK_SUFFIX = ".cache";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final HttpRequestProcessor<CachedResponse> requestProcessor;
+    private final ContentDecodingBodyHandler contentDecoding;
+    private final long maxMemoryBytes;
+    private final Duration defaultTtl;
+    private final Duration retainStale;
+    //null when there is no disk tier
+    private final Path diskDirectory;
+    private final long maxDiskBytes;
+    //written since the directory was last swept - it is swept again once this is an eighth of its bound
+    private final AtomicLong diskBytesSinceSweep = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private HttpResponseCache(Builder builder) {
+        this.requestProcessor = Objects.requireNonNull(builder.requestProcessor, "No request processor specified! Can not continue!");
+        this.contentDecoding = builder.contentDecoding;
+        this.maxMemoryBytes = builder.maxMemoryBytes;
+        this.defaultTtl = builder.defaultTtl;
+        this.retainStale = builder.retainStale;
+        this.diskDirectory = builder.diskDirectory;
+        this.maxDiskBytes = builder.maxDiskBytes;
+        if (Objects.nonNull(diskDirectory)) {
+            //whatever an earlier run left behind
+            sweepDisk();
+        }
+    }
+
+    public static Builder builder(HttpRequestProcessor<CachedResponse> requestProcessor) {
+        return new Builder(requestProcessor);
+    }
+
+    /**
+     * Fetches the request's response body - from me if I hold it fresh, from upstream otherwise - waiting for it.
+     *
+     * @throws HttpRequestProcessor.RequestFailedException if the body had to be fetched, and could not be.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public InputStream fetch(HttpRequest httpRequest) throws HttpRequestProcessor.RequestFailedException, InterruptedException {
+        return fetch(httpRequest, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Fetches the request's response body at the given priority, waiting for it.
+     *
+     * @see #fetch(HttpRequest)
+     */
+    public InputStream fetch(HttpRequest httpRequest, RequestPriority priority) throws HttpRequestProcessor.RequestFailedException, InterruptedException {
+        try {
+            return fetchAsync(httpRequest, priority).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof HttpRequestProcessor.RequestFailedException requestFailed) {
+                throw requestFailed;
+            }
+            throw new HttpRequestProcessor.RequestFailedException(HttpStatus.BAD_GATEWAY, "Failed to get response!", e.getCause());
+        }
+    }
+
+    /**
+     * @return a future completed with a stream over the request's response body - every caller gets a stream of its own.
+     * Anything but a <code>GET</code> bypasses me altogether.
+     */
+    public CompletableFuture<InputStream> fetchAsync(HttpRequest httpRequest) {
+        return fetchAsync(httpRequest, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Fetches the request's response body at the given priority - a fetch joining one already in flight shares its
+     * priority.
+     *
+     * @see #fetchAsync(HttpRequest)
+     */
+    public CompletableFuture<InputStream> fetchAsync(HttpRequest httpRequest, RequestPriority priority) {
+        if (!"GET".equals(httpRequest.method())) {
+            return requestProcessor.executeAsync(httpRequest, cachingBodyHandler(), priority)
+                    .thenApply(response -> new ByteArrayInputStream(response.body()));
+        }
+        String key = httpRequest.uri().toString();
+        Optional<Entry> cached = lookup(key);
+        if (cached.isPresent() && cached.get().isFresh(System.currentTimeMillis())) {
+            hits.increment();
+            return CompletableFuture.completedFuture(new ByteArrayInputStream(cached.get().body()));
+        }
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, created);
+        if (Objects.isNull(existing)) {
+            load(httpRequest, key, cached.orElse(null), priority).whenComplete((body, failure) -> {
+                inFlight.remove(key, created);
+                if (Objects.isNull(failure)) {
+                    created.complete(body);
+                } else {
+                    created.completeExceptionally(failure);
+                }
+            });
+            existing = created;
+        } else {
+            log.debug("Joining the request in flight for {}.", key);
+        }
+        //one caller cancelling must not cancel the request everyone else is waiting on
+        return existing.copy().thenApply(ByteArrayInputStream::new);
+    }
+
+    /**
+     * @return how many fetches were answered from me without going upstream.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many fetches went upstream with a conditional request.
+     */
+    public long revalidationCount() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return how many fetches went upstream with nothing to revalidate.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    private CompletableFuture<byte[]> load(HttpRequest httpRequest, String key, Entry stale, RequestPriority priority) {
+        HttpRequest upstreamRequest = httpRequest;
+        if (Objects.nonNull(stale) && stale.canRevalidate()) {
+            revalidations.increment();
+            HttpRequest.Builder conditional = HttpRequest.newBuilder(httpRequest, (name, value) -> true);
+            if (Objects.nonNull(stale.etag())) {
+                conditional.header("If-None-Match", stale.etag());
+            }
+            if (Objects.nonNull(stale.lastModified())) {
+                conditional.header("If-Modified-Since", stale.lastModified());
+            }
+            upstreamRequest = conditional.build();
+        } else {
+            misses.increment();
+        }
+        return requestProcessor.executeAsync(upstreamRequest, cachingBodyHandler(), priority)
+                .handle((response, failure) -> {
+                    if (Objects.isNull(failure)) {
+                        store(key, response);
+                        return response.body();
+                    }
+                    Throwable cause = failure instanceof CompletionException && Objects.nonNull(failure.getCause()) ? failure.getCause() : failure;
+                    if (Objects.nonNull(stale) && cause instanceof HttpRequestProcessor.RequestFailedException requestFailed
+                            && requestFailed.getResponseStatus() == HttpStatus.NOT_MODIFIED) {
+                        log.debug("{} not modified.", key);
+                        put(stale.refreshed(System.currentTimeMillis()));
+                        return stale.body();
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    private void store(String key, CachedResponse response) {
+        String cacheControl = response.headers().allValues("Cache-Control").stream()
+                .map(value -> value.toLowerCase(Locale.ROOT))
+                .reduce("", (a, b) -> a + "," + b);
+        if (cacheControl.contains("no-store")) {
+            return;
+        }
+        long ttlMillis = cacheControl.contains("no-cache") ? 0 : maxAge(cacheControl).orElse(defaultTtl).toMillis();
+        put(new Entry(key, response.body(), response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null), ttlMillis, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private static Optional<Duration> maxAge(String cacheControl) {
+        for (String directive : cacheControl.split(",")) {
+            String trimmed = directive.trim();
+            if (trimmed.startsWith("max-age=")) {
+                try {
+                    return Optional.of(Duration.ofSeconds(Long.parseLong(trimmed.substring("max-age=".length()).trim())));
+                } catch (NumberFormatException e) {
+                    return Optional.empty();
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Entry> lookup(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = memory.get(key);
+            if (Objects.nonNull(entry) && !isRetainable(entry, now)) {
+                removeFromMemory(key);
+                entry = null;
+            }
+        }
+        if (Objects.isNull(entry) && Objects.nonNull(diskDirectory)) {
+            entry = readFromDisk(key).orElse(null);
+            if (Objects.nonNull(entry) && !isRetainable(entry, now)) {
+                deleteFromDisk(diskPath(key));
+                entry = null;
+            }
+            if (Objects.nonNull(entry)) {
+                putInMemory(entry);
+            }
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    private boolean isRetainable(Entry entry, long now) {
+        //a stale entry is only worth keeping if it can be revalidated
+        return entry.isFresh(now) || (entry.canRevalidate() && now - entry.expiresAtMillis() <= retainStale.toMillis());
+    }
+
+    private void put(Entry entry) {
+        putInMemory(entry);
+        if (Objects.nonNull(diskDirectory)) {
+            writeToDisk(entry);
+        }
+    }
+
+    private synchronized void putInMemory(Entry entry) {
+        removeFromMemory(entry.key());
+        if (entry.weight() > maxMemoryBytes) {
+            return;
+        }
+        memory.put(entry.key(), entry);
+        memoryBytes += entry.weight();
+        Iterator<Entry> leastRecentlyUsed = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && leastRecentlyUsed.hasNext()) {
+            memoryBytes -= leastRecentlyUsed.next().weight();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry removed = memory.remove(key);
+        if (Objects.nonNull(removed)) {
+            memoryBytes -= removed.weight();
+        }
+    }
+
+    private Optional<Entry> readFromDisk(String key) {
+        try {
+            return readEntry(diskPath(key), true).filter(entry -> key.equals(entry.key()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Failed to read cached response for {}!", key, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the entry in the given file - with an empty body unless asked for it - or nothing if the file is in an
+     * older format.
+     */
+    private static Optional<Entry> readEntry(Path file, boolean withBody) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != DISK_FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            String key = in.readUTF();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            long ttlMillis = in.readLong();
+            long expiresAtMillis = in.readLong();
+            byte[] body = withBody ? in.readNBytes(in.readInt()) : NO_BODY;
+            return Optional.of(new Entry(key, body, etag, lastModified, ttlMillis, expiresAtMillis));
+        }
+    }
+
+    private void writeToDisk(Entry entry) {
+        Path temp = null;
+        try {
+            Path target = diskPath(entry.key());
+            temp = Files.createTempFile(diskDirectory, target.getFileName().toString(), TEMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeInt(DISK_FORMAT_VERSION);
+                out.writeUTF(entry.key());
+                out.writeUTF(Objects.requireNonNullElse(entry.etag(), ""));
+                out.writeUTF(Objects.requireNonNullElse(entry.lastModified(), ""));
+                out.writeLong(entry.ttlMillis());
+                out.writeLong(entry.expiresAtMillis());
+                out.writeInt(entry.body().length);
+                out.write(entry.body());
+            }
+            //readers see either the old entry or the new one - never half of one
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException e) {
+            log.warn("Failed to write cached response for {}!", entry.key(), e);
+        } finally {
+            if (Objects.nonNull(temp)) {
+                deleteFromDisk(temp);
+            }
+        }
+        if (diskBytesSinceSweep.addAndGet(entry.weight()) > maxDiskBytes / 8) {
+            sweepDisk();
+        }
+    }
+
+    /**
+     * Deletes the entries on disk no longer worth keeping - and those of an older format - then, least recently written
+     * first, as many more as it takes to bring the directory within its size bound. A sweep already under way on another
+     * thread is left to it.
+     */
+    void sweepDisk() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            diskBytesSinceSweep.set(0);
+            long now = System.currentTimeMillis();
+            List<DiskFile> kept = new ArrayList<>();
+            long keptBytes = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDirectory)) {
+                for (Path file : files) {
+                    try {
+                        String name = file.getFileName().toString();
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        long writtenAtMillis = attributes.lastModifiedTime().toMillis();
+                        if (name.endsWith(TEMP_SUFFIX)) {
+                            //left behind by a write that never finished - any write still under way is not a minute old
+                            if (now - writtenAtMillis > Duration.ofMinutes(1).toMillis()) {
+                                deleteFromDisk(file);
+                            }
+                        } else if (name.endsWith(DISK_SUFFIX)) {
+                            if (isRetainable(file, now)) {
+                                kept.add(new DiskFile(file, attributes.size(), writtenAtMillis));
+                                keptBytes += attributes.size();
+                            } else {
+                                deleteFromDisk(file);
+                            }
+                        }
+                    } catch (NoSuchFileException e) {
+                        //deleted under the sweep - by a lookup, or by another cache on the same directory
+                    }
+                }
+            }
+            kept.sort(Comparator.comparingLong(DiskFile::writtenAtMillis));
+            for (Iterator<DiskFile> leastRecentlyWritten = kept.iterator(); keptBytes > maxDiskBytes && leastRecentlyWritten.hasNext(); ) {
+                DiskFile file = leastRecentlyWritten.next();
+                deleteFromDisk(file.path());
+                keptBytes -= file.size();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to sweep cached responses in {}!", diskDirectory, e);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private boolean isRetainable(Path file, long now) throws NoSuchFileException {
+        try {
+            return readEntry(file, false).filter(entry -> isRetainable(entry, now)).isPresent();
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException e) {
+            log.debug("Unreadable cached response {} - deleting it.", file, e);
+            return false;
+        }
+    }
+
+    private static void deleteFromDisk(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached response {}!", file, e);
+        }
+    }
+
+    private Path diskPath(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return diskDirectory.resolve(HexFormat.of().formatHex(digest) + DISK_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported!", e);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Reads the whole body, decoded - once it has all arrived, so decoding never blocks the HTTP client's thread.
+     */
+    private HttpResponse.BodyHandler<CachedResponse> cachingBodyHandler() {
+        return responseInfo -> {
+            String contentEncoding = responseInfo.headers().firstValue("Content-Encoding").orElse("identity");
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), encoded -> {
+                try (InputStream decoded = contentDecoding.decoding(contentEncoding, new ByteArrayInputStream(encoded))) {
+                    return new CachedResponse(responseInfo.headers(), decoded.readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+    }
+
+    /**
+     * A response as fetched from upstream - its headers, and its decoded body.
+     */
+    public record CachedResponse(HttpHeaders headers, byte[] body) {
+    }
+
+    private record Entry(String key, byte[] body, String etag, String lastModified, long ttlMillis, long expiresAtMillis) {
+
+        boolean isFresh(long now) {
+            return now < expiresAtMillis;
+        }
+
+        boolean canRevalidate() {
+            return Objects.nonNull(etag) || Objects.nonNull(lastModified);
+        }
+
+        long weight() {
+            return (long) body.length + 2L * key.length() + ENTRY_OVERHEAD;
+        }
+
+        Entry refreshed(long now) {
+            return new Entry(key, body, etag, lastModified, ttlMillis, now + ttlMillis);
+        }
+    }
+
+    private record DiskFile(Path path, long size, long writtenAtMillis) {
+    }
+
+    public static final class Builder {
+
+        private final HttpRequestProcessor<CachedResponse> requestProcessor;
+        private ContentDecodingBodyHandler contentDecoding = ContentDecodingBodyHandler.defaultHandler();
+        private long maxMemoryBytes = 64L * 1024 * 1024;
+        private Duration defaultTtl = Duration.ofSeconds(30);
+        private Duration retainStale = Duration.ofHours(1);
+        private Path diskDirectory;
+        private long maxDiskBytes = 256L * 1024 * 1024;
+
+        private Builder(HttpRequestProcessor<CachedResponse> requestProcessor) {
+            this.requestProcessor = requestProcessor;
+        }
+
+        /**
+         * Bounds the total size of the entries held in memory - 64MB by default.
+         */
+        public Builder maxMemoryBytes(long maxMemoryBytes) {
+            Validate.isTrue(maxMemoryBytes > 0, "The memory bound must be positive!");
+            this.maxMemoryBytes = maxMemoryBytes;
+            return this;
+        }
+
+        /**
+         * Sets how long a response without a <code>max-age</code> stays fresh - 30 seconds by default.
+         */
+        public Builder defaultTtl(Duration defaultTtl) {
+            Validate.isTrue(!defaultTtl.isNegative(), "The time to live must not be negative!");
+            this.defaultTtl = defaultTtl;
+            return this;
+        }
+
+        /**
+         * Sets how long a stale, revalidatable entry is kept before being dropped - an hour by default.
+         */
+        public Builder retainStale(Duration retainStale) {
+            Validate.isTrue(!retainStale.isNegative(), "The stale retention must not be negative!");
+            this.retainStale = retainStale;
+            return this;
+        }
+
+        /**
+         * Writes entries through to the given directory - created if need be - as well as holding them in memory.
+         */
+        public Builder diskDirectory(Path diskDirectory) {
+            try {
+                this.diskDirectory = Files.createDirectories(diskDirectory);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Can not use " + diskDirectory + " for cached responses!", e);
+            }
+            return this;
+        }
+
+        /**
+         * Bounds the total size of the files in the disk directory - 256MB by default.
+         */
+        public Builder maxDiskBytes(long maxDiskBytes) {
+            Validate.isTrue(maxDiskBytes > 0, "The disk bound must be positive!");
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public Builder contentDecoding(ContentDecodingBodyHandler contentDecoding) {
+            this.contentDecoding = Objects.requireNonNull(contentDecoding, "No content decoding specified! Can not continue!");
+            return this;
+        }
+
+        public HttpResponseCache build() {
+            return new HttpResponseCache(this);
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package org.g5.yf.http;
 
-import java.util.Arrays;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
+/**
+ * I am an HTTP response status - resolved from a status code by a plain array lookup, as every response is.
+ * <p>
+ * A code I don't know resolves to the generic status of its class - a <code>499</code> to {@link #BAD_REQUEST}, a
+ * <code>520</code> to {@link #INTERNAL_SERVER_ERROR} - and so is still handled as its class prescribes. A code outside
+ * <code>100-599</code> is not a valid response at all, and resolves to {@link #BAD_GATEWAY}.
+ */
 public enum HttpStatus {
             CONTINUE (100, "CONTINUE"),
             SWITCHING_PROTOCOLS (101, "SWITCHING PROTOCOLS"),
@@ -25,6 +29,7 @@ public enum HttpStatus {
             FOUND (302, "FOUND"),
             SEE_OTHER (303, "SEE OTHER"),
             NOT_MODIFIED (304, "NOT MODIFIED"),
+            USE_PROXY (305, "USE PROXY"),
             TEMPORARY_REDIRECT (307, "TEMPORARY REDIRECT"),
             PERMANENT_REDIRECT (308, "PERMANENT REDIRECT"),
             BAD_REQUEST (400, "BAD REQUEST"),
@@ -65,17 +70,37 @@ public enum HttpStatus {
             VARIANT_ALSO_NEGOTIATES (506, "VARIANT ALSO NEGOTIATES"),
             INSUFFICIENT_STORAGE (507, "INSUFFICIENT STORAGE"),
             LOOP_DETECTED (508, "LOOP DETECTED"),
-            NOT_EXTENDED (510, "NOT EXTENDED");
+            NOT_EXTENDED (510, "NOT EXTENDED"),
+            NETWORK_AUTHENTICATION_REQUIRED (511, "NETWORK AUTHENTICATION REQUIRED");
 
-    private static final Map<Integer, HttpStatus> codeStatusMap =
-            Arrays.stream(HttpStatus.values()).collect(Collectors.toMap(HttpStatus::code, Function.identity()));
+    public enum Category {
+        INFORMATIONAL, SUCCESS, REDIRECTION, CLIENT_ERROR, SERVER_ERROR
+    }
+
+    private static final int MIN_CODE = 100;
+    private static final int MAX_CODE = 599;
+    //indexed by code - every valid code resolves to a status, known or the generic one of its class
+    private static final HttpStatus[] codeStatuses = new HttpStatus[MAX_CODE + 1];
+
+    static {
+        for (HttpStatus httpStatus : values()) {
+            codeStatuses[httpStatus.code] = httpStatus;
+        }
+        for (int code = MIN_CODE; code <= MAX_CODE; code++) {
+            if (Objects.isNull(codeStatuses[code])) {
+                codeStatuses[code] = codeStatuses[code - code % 100];
+            }
+        }
+    }
 
     private final int code;
     private final String status;
+    private final Category category;
 
     HttpStatus(int code, String status) {
         this.code = code;
         this.status = status;
+        this.category = Category.values()[code / 100 - 1];
     }
 
     public int code() {
@@ -86,11 +111,26 @@ public enum HttpStatus {
         return status;
     }
 
+    public Category category() {
+        return category;
+    }
+
     public boolean isOkStatus() {
-        return (this.code >= 200 && this.code < 300);
+        return category == Category.SUCCESS;
+    }
+
+    /**
+     * @return whether a request that failed with me may succeed if sent again - I report a transient condition, such
+     * as throttling or an overloaded or unreachable upstream, rather than something wrong with the request.
+     */
+    public boolean isRetryable() {
+        return switch (this) {
+            case REQUEST_TIMEOUT, TOO_EARLY, TOO_MANY_REQUESTS, BAD_GATEWAY, SERVICE_UNAVAILABLE, GATEWAY_TIMEOUT -> true;
+            default -> false;
+        };
     }
 
     public static HttpStatus resolve(int code) {
-        return codeStatusMap.getOrDefault(code, HttpStatus.NOT_IMPLEMENTED);
+        return code >= MIN_CODE && code <= MAX_CODE ? codeStatuses[code] : BAD_GATEWAY;
     }
 }
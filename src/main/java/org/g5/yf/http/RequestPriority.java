@@ -0,0 +1,16 @@
+package org.g5.yf.http;
+
+/**
+ * How urgently a request is wanted - when a {@link HostRateLimiter rate limiter} holds requests back, every waiting
+ * interactive request is let through before any bulk one.
+ */
+public enum RequestPriority {
+    /**
+     * Someone is waiting on the response - the default.
+     */
+    INTERACTIVE,
+    /**
+     * Part of a batch, such as a refresh of many tickers - served with whatever rate interactive requests leave over.
+     */
+    BULK
+}
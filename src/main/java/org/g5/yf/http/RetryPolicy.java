@@ -0,0 +1,133 @@
+package org.g5.yf.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * I decide whether a failed request is worth another attempt, and how long to wait before it. Only transient failures
+ * are retried - those with a {@link HttpStatus#isRetryable() retryable status}, such as rate limiting (429), and failed,
+ * unavailable or timed out upstreams (502, 503, 504) - which includes connection failures and timeouts, reported as
+ * 502 and 504. Only idempotent requests are retried, unless configured otherwise. Requests refused by an open
+ * {@link CircuitBreaker circuit} are never retried, whatever their status.
+ * <p>
+ * Delays back off exponentially, with full jitter - a random delay up to the backoff - so that clients failing together
+ * don't all retry together. A server's <code>Retry-After</code> is honoured instead, up to a limit; a server asking for
+ * a longer wait than that is not retried at all.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final Duration maxRetryAfter;
+    private final boolean retryNonIdempotent;
+
+    private RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration maxRetryAfter, boolean retryNonIdempotent) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxRetryAfter = maxRetryAfter;
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param attempt the attempt that just failed - the first attempt is <code>1</code>.
+     */
+    public boolean shouldRetry(HttpRequest request, int attempt, Throwable failure) {
+        return attempt < maxAttempts
+                && (retryNonIdempotent || HttpRequestProcessor.isIdempotent(request))
+                && !(failure instanceof HttpRequestProcessor.CircuitOpenException)
+                && failure instanceof HttpRequestProcessor.RequestFailedException requestFailed
+                && requestFailed.getResponseStatus().isRetryable()
+                && requestFailed.getRetryAfter().map(retryAfter -> retryAfter.compareTo(maxRetryAfter) <= 0).orElse(true);
+    }
+
+    /**
+     * @param attempt the attempt that just failed - the first attempt is <code>1</code>.
+     * @return how long to wait before the next attempt.
+     */
+    public Duration delayBefore(int attempt, Throwable failure) {
+        if (failure instanceof HttpRequestProcessor.RequestFailedException requestFailed && requestFailed.getRetryAfter().isPresent()) {
+            return requestFailed.getRetryAfter().get();
+        }
+        long backoffMillis = Math.min(maxDelay.toMillis(), baseDelay.toMillis() << Math.min(attempt - 1, 30));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+    }
+
+    /**
+     * Parses a <code>Retry-After</code> header - either a number of seconds, or an HTTP date.
+     *
+     * @return the time to wait - empty if the header can't be parsed.
+     */
+    public static Optional<Duration> parseRetryAfter(String retryAfter) {
+        String value = retryAfter.trim();
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+        } catch (NumberFormatException e) {
+            try {
+                Duration untilDate = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return Optional.of(untilDate.isNegative() ? Duration.ZERO : untilDate);
+            } catch (DateTimeParseException notADate) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private int maxAttempts = 4;
+        private Duration baseDelay = Duration.ofMillis(200);
+        private Duration maxDelay = Duration.ofSeconds(10);
+        private Duration maxRetryAfter = Duration.ofSeconds(60);
+        private boolean retryNonIdempotent;
+
+        private Builder() { }
+
+        /**
+         * @param maxAttempts the most attempts made in all - the first attempt included.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            Validate.isTrue(maxAttempts > 0, "At least one attempt is required!");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder baseDelay(Duration baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * @param maxRetryAfter the longest <code>Retry-After</code> honoured - a server asking for longer is not retried.
+         */
+        public Builder maxRetryAfter(Duration maxRetryAfter) {
+            this.maxRetryAfter = maxRetryAfter;
+            return this;
+        }
+
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(maxAttempts, baseDelay, maxDelay, maxRetryAfter, retryNonIdempotent);
+        }
+    }
+}
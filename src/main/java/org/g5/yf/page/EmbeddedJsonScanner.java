@@ -0,0 +1,330 @@
+package org.g5.yf.page;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonPointer;
+import tools.jackson.core.filter.FilteringParserDelegate;
+import tools.jackson.core.filter.JsonPointerBasedFilter;
+import tools.jackson.core.filter.TokenFilter;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * I pull the JSON a SvelteKit page embeds for its fetched data - the bodies of its
+ * <code>&lt;script data-sveltekit-fetched data-url="..."&gt;</code> tags - straight out of the page's bytes, in a single
+ * pass. No DOM is ever built: everything outside a matching script is skipped byte by byte, and a matching script's
+ * body is fed directly to a streaming JSON parser - optionally projected down to a single
+ * {@link JsonPointer pointer}, so only the part wanted is ever built into a tree.
+ * <p>
+ * I understand just enough HTML to find script tags: comments are skipped, attribute values are unquoted and their
+ * character references decoded, and a script ends at the first <code>&lt;/script</code>, case-insensitively - as in
+ * any HTML parser. The page is expected to be UTF-8.
+ */
+public class EmbeddedJsonScanner {
+
+    public static final String FETCHED_ATTRIBUTE = "data-sveltekit-fetched";
+    public static final String URL_ATTRIBUTE = "data-url";
+
+    private static final byte[] SCRIPT_OPEN = ascii("<script");
+    private static final byte[] SCRIPT_CLOSE = ascii("</script");
+    private static final byte[] COMMENT_OPEN = ascii("<!--");
+    private static final byte[] COMMENT_CLOSE = ascii("-->");
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final Map<String, String> NAMED_REFERENCES = Map.of(
+            "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", " ");
+
+    private final JsonMapper jsonMapper;
+
+    public EmbeddedJsonScanner(JsonMapper jsonMapper) {
+        this.jsonMapper = Objects.requireNonNull(jsonMapper, "No JSON mapper specified! Can not continue!");
+    }
+
+    /**
+     * @see #scan(InputStream, Predicate, JsonPointer)
+     */
+    public Map<String, JsonNode> scan(InputStream page, Predicate<String> urlFilter) {
+        return scan(page, urlFilter, null);
+    }
+
+    /**
+     * Scans the page for embedded data. I do not close the stream.
+     *
+     * @param urlFilter which <code>data-url</code>s to parse - the scripts of any other are skipped unparsed.
+     * @param projection the part of each script's JSON to keep - or <code>null</code> to keep all of it.
+     * @return the (projected) JSON of each matching script, by its <code>data-url</code>, in page order.
+     */
+    public Map<String, JsonNode> scan(InputStream page, Predicate<String> urlFilter, JsonPointer projection) {
+        PageReader reader = new PageReader(page);
+        Map<String, JsonNode> embeddedJson = new LinkedHashMap<>();
+        try {
+            while (reader.skipTo('<')) {
+                if (reader.lookingAt(COMMENT_OPEN)) {
+                    reader.skip(COMMENT_OPEN.length);
+                    reader.skipPast(COMMENT_CLOSE);
+                } else if (reader.lookingAt(SCRIPT_OPEN) && isTagNameEnd(reader.peek(SCRIPT_OPEN.length))) {
+                    reader.skip(SCRIPT_OPEN.length);
+                    Map<String, String> attributes = reader.readAttributes();
+                    String url = attributes.get(URL_ATTRIBUTE);
+                    if (attributes.containsKey(FETCHED_ATTRIBUTE) && Objects.nonNull(url) && urlFilter.test(url)) {
+                        embeddedJson.put(url, readJson(reader.scriptBody(), projection));
+                    }
+                    reader.skipPast(SCRIPT_CLOSE);
+                } else {
+                    reader.skip(1);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed reading page!", e);
+        } catch (JacksonException e) {
+            throw new IllegalStateException("Failed reading embedded JSON - broken JSON in page?", e);
+        }
+        return embeddedJson;
+    }
+
+    private JsonNode readJson(InputStream scriptBody, JsonPointer projection) {
+        try (JsonParser parser = jsonMapper.createParser(scriptBody)) {
+            if (Objects.isNull(projection)) {
+                return jsonMapper.readTree(parser);
+            }
+            return jsonMapper.readTree(new FilteringParserDelegate(parser, new JsonPointerBasedFilter(projection),
+                    TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, false));
+        }
+    }
+
+    private static boolean isTagNameEnd(int b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static int toLowerAscii(int b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Decodes the character references in an attribute value - any I don't recognise are left as they are.
+     */
+    static String decodeReferences(String value) {
+        int ampersand = value.indexOf('&');
+        if (ampersand < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        int from = 0;
+        while (ampersand >= 0) {
+            decoded.append(value, from, ampersand);
+            int semicolon = value.indexOf(';', ampersand);
+            String replacement = semicolon < 0 ? null : reference(value.substring(ampersand + 1, semicolon));
+            if (Objects.isNull(replacement)) {
+                decoded.append('&');
+                from = ampersand + 1;
+            } else {
+                decoded.append(replacement);
+                from = semicolon + 1;
+            }
+            ampersand = value.indexOf('&', from);
+        }
+        return decoded.append(value, from, value.length()).toString();
+    }
+
+    private static String reference(String name) {
+        try {
+            if (name.startsWith("#x") || name.startsWith("#X")) {
+                return Character.toString(Integer.parseInt(name.substring(2), 16));
+            } else if (name.startsWith("#")) {
+                return Character.toString(Integer.parseInt(name.substring(1)));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return NAMED_REFERENCES.get(name);
+    }
+
+    /**
+     * I read a page a buffer at a time, with just enough lookahead to recognise tags.
+     */
+    private static final class PageReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+
+        private PageReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return whether at least the given number of bytes are buffered - reading more if need be.
+         */
+        private boolean fill(int count) throws IOException {
+            while (limit - position < count) {
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    return false;
+                }
+                limit += read;
+            }
+            return true;
+        }
+
+        private int peek(int offset) throws IOException {
+            return fill(offset + 1) ? buffer[position + offset] & 0xff : -1;
+        }
+
+        private int read() throws IOException {
+            return fill(1) ? buffer[position++] & 0xff : -1;
+        }
+
+        private void skip(int count) {
+            position += count;
+        }
+
+        /**
+         * Skips to the next occurrence of the byte.
+         *
+         * @return false if the page ended first.
+         */
+        private boolean skipTo(char b) throws IOException {
+            while (true) {
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] == b) {
+                        position = i;
+                        return true;
+                    }
+                }
+                position = limit;
+                if (!fill(1)) {
+                    return false;
+                }
+            }
+        }
+
+        private boolean lookingAt(byte[] lowerCasePattern) throws IOException {
+            if (!fill(lowerCasePattern.length)) {
+                return false;
+            }
+            for (int i = 0; i < lowerCasePattern.length; i++) {
+                if (toLowerAscii(buffer[position + i]) != lowerCasePattern[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipPast(byte[] lowerCasePattern) throws IOException {
+            while (skipTo((char) lowerCasePattern[0])) {
+                if (lookingAt(lowerCasePattern)) {
+                    skip(lowerCasePattern.length);
+                    return;
+                }
+                skip(1);
+            }
+        }
+
+        /**
+         * Reads the attributes of the tag whose name has just been read, up to and including its closing
+         * <code>&gt;</code>.
+         */
+        private Map<String, String> readAttributes() throws IOException {
+            Map<String, String> attributes = new HashMap<>();
+            ByteArrayOutputStream token = new ByteArrayOutputStream();
+            int b = read();
+            while (b >= 0 && b != '>') {
+                if (isWhitespace(b) || b == '/') {
+                    b = read();
+                    continue;
+                }
+                token.reset();
+                while (b >= 0 && b != '=' && b != '>' && b != '/' && !isWhitespace(b)) {
+                    token.write(toLowerAscii(b));
+                    b = read();
+                }
+                String name = token.toString(StandardCharsets.UTF_8);
+                while (isWhitespace(b)) {
+                    b = read();
+                }
+                String value = "";
+                if (b == '=') {
+                    b = read();
+                    while (isWhitespace(b)) {
+                        b = read();
+                    }
+                    token.reset();
+                    if (b == '"' || b == '\'') {
+                        int quote = b;
+                        for (b = read(); b >= 0 && b != quote; b = read()) {
+                            token.write(b);
+                        }
+                        b = read();
+                    } else {
+                        while (b >= 0 && b != '>' && !isWhitespace(b)) {
+                            token.write(b);
+                            b = read();
+                        }
+                    }
+                    value = decodeReferences(token.toString(StandardCharsets.UTF_8));
+                }
+                attributes.putIfAbsent(name, value);
+            }
+            return attributes;
+        }
+
+        /**
+         * @return a stream over the body of the script whose start tag has just been read - ending just before its
+         * end tag. Closing it has no effect.
+         */
+        private InputStream scriptBody() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return atScriptEnd() ? -1 : PageReader.this.read();
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (atScriptEnd()) {
+                        return -1;
+                    }
+                    int count = 0;
+                    //a '<' that did not end the script is copied as the first byte - the next '<' stops the copy
+                    bytes[offset + count++] = buffer[position++];
+                    while (count < length && position < limit && buffer[position] != '<') {
+                        bytes[offset + count++] = buffer[position++];
+                    }
+                    return count;
+                }
+
+                private boolean atScriptEnd() throws IOException {
+                    return !fill(1) || (buffer[position] == '<' && lookingAt(SCRIPT_CLOSE));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.g5.pwdmgr.converter;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RevelationToKeePassConverterTest {
+
+    private static File revelationExport() {
+        return new File(RevelationToKeePassConverterTest.class.getResource("/revelation/revelation-export.xml").getFile());
+    }
+
+    @Test
+    void shouldStreamEntriesToKeePassXml(@TempDir Path tempDir) throws Exception {
+        File outputFile = tempDir.resolve("keepass.xml").toFile();
+
+        long entryCount = RevelationToKeePassConverter.convert(revelationExport(), outputFile);
+
+        assertThat(entryCount).isEqualTo(2);
+        Document kpXml = new SAXBuilder().build(outputFile);
+        assertThat(kpXml.getRootElement().getName()).isEqualTo("pwlist");
+        List<Element> kpEntries = kpXml.getRootElement().getChildren("pwentry");
+        assertThat(kpEntries).extracting(e -> e.getChildText("title")).containsExactly("Example", "Router");
+        assertThat(kpEntries.get(0).getChildText("username")).isEqualTo("alice");
+        assertThat(kpEntries.get(0).getChildText("password")).isEqualTo("s3cret");
+        assertThat(kpEntries.get(0).getChildText("notes")).contains("some notes", "generic-email=alice@example.com");
+    }
+
+    @Test
+    void shouldConvertToKeePass2XmlInParallelPreservingOrder(@TempDir Path tempDir) throws Exception {
+        File outputFile = tempDir.resolve("keepass2.xml").toFile();
+
+        long entryCount = RevelationToKeePassConverter.convert(revelationExport(), outputFile, KeePassFormat.KEEPASS_2, ForkJoinPool.commonPool());
+
+        assertThat(entryCount).isEqualTo(2);
+        Element group = new SAXBuilder().build(outputFile).getRootElement().getChild("Root").getChild("Group");
+        assertThat(group.getChildText("Name")).isEqualTo("Revelation Import");
+        List<Element> kpEntries = group.getChildren("Entry");
+        assertThat(kpEntries).extracting(e -> stringValue(e, "Title")).containsExactly("Example", "Router");
+        Element example = kpEntries.get(0);
+        assertThat(stringValue(example, "UserName")).isEqualTo("alice");
+        assertThat(stringValue(example, "Notes")).isEqualTo("some notes");
+        assertThat(stringValue(example, "generic-email")).isEqualTo("alice@example.com");
+        Element password = example.getChildren("String").stream()
+                .filter(s -> "Password".equals(s.getChildText("Key"))).findFirst().orElseThrow().getChild("Value");
+        assertThat(password.getText()).isEqualTo("s3cret");
+        assertThat(password.getAttributeValue("ProtectInMemory")).isEqualTo("True");
+        assertThat(example.getChild("Times").getChildText("CreationTime")).isEqualTo("2014-05-13T16:53:20Z");
+    }
+
+    @Test
+    void shouldLeaveNoOutputWhenTheExportIsMalformed(@TempDir Path tempDir) throws Exception {
+        //a whole first entry, then a truncated one
+        File revelationFile = Files.writeString(tempDir.resolve("broken.xml"), "<revelationdata><entry><name>x</name>"
+                + "<updated>1400000000</updated></entry><entry><name>y</name>").toFile();
+        File outputFile = tempDir.resolve("keepass.xml").toFile();
+
+        assertThatThrownBy(() -> RevelationToKeePassConverter.convert(revelationFile, outputFile))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(outputFile).doesNotExist();
+        assertThat(tempDir.toFile().list()).containsExactly("broken.xml");
+    }
+
+    private static String stringValue(Element kp2Entry, String key) {
+        return kp2Entry.getChildren("String").stream()
+                .filter(s -> key.equals(s.getChildText("Key")))
+                .map(s -> s.getChildText("Value"))
+                .findFirst().orElse(null);
+    }
+
+    @Test
+    void shouldConvertBatchesConcurrently(@TempDir Path tempDir) throws Exception {
+        for (String vault : List.of("alice.xml", "bob.xml", "carol.xml")) {
+            Files.copy(revelationExport().toPath(), tempDir.resolve(vault));
+        }
+        Files.writeString(tempDir.resolve("broken.xml"), "<revelationdata><entry><name>x</name>");
+        List<File> sources = RevelationBatchConverter.resolveSources(tempDir.toString());
+        assertThat(sources).extracting(File::getName).containsExactly("alice.xml", "bob.xml", "broken.xml", "carol.xml");
+
+        RevelationBatchConverter.Summary summary = new RevelationBatchConverter(2)
+                .convert(sources, source -> new File(source.getParentFile(), RevelationToKeePassConverter.OUTPUT_FILE_PREFIX + source.getName()));
+
+        assertThat(summary.succeeded()).isEqualTo(3);
+        assertThat(summary.failed()).isEqualTo(1);
+        assertThat(summary.entryCount()).isEqualTo(6);
+        assertThat(summary.report()).contains("4 files: 3 converted, 1 failed; 6 entries");
+        //a failed file leaves no output behind
+        assertThat(summary.results()).filteredOn(result -> !result.succeeded())
+                .singleElement().satisfies(result -> assertThat(result.output()).doesNotExist());
+        assertThat(summary.results()).filteredOn(RevelationBatchConverter.FileResult::succeeded)
+                .allSatisfy(result -> assertThat(result.output()).isFile());
+        //outputs are never picked up as sources
+        assertThat(RevelationBatchConverter.resolveSources(tempDir + "/*.xml")).hasSize(4);
+    }
+
+    @Test
+    void shouldFailFilesWhoseOutputsCollide(@TempDir Path tempDir) throws Exception {
+        for (String vault : List.of("a/revelation.xml", "b/revelation.xml", "c/other.xml")) {
+            Files.createDirectories(tempDir.resolve(vault).getParent());
+            Files.copy(revelationExport().toPath(), tempDir.resolve(vault));
+        }
+        Path outputDirectory = Files.createDirectory(tempDir.resolve("out"));
+        List<File> sources = RevelationBatchConverter.resolveSources(tempDir + "/**/*.xml");
+
+        RevelationBatchConverter.Summary summary = new RevelationBatchConverter(2)
+                .convert(sources, source -> outputDirectory.resolve(RevelationToKeePassConverter.OUTPUT_FILE_PREFIX + source.getName()).toFile());
+
+        //neither same-named vault is converted - one would have replaced the other
+        assertThat(summary.succeeded()).isEqualTo(1);
+        assertThat(summary.failed()).isEqualTo(2);
+        assertThat(summary.results()).filteredOn(result -> !result.succeeded())
+                .extracting(result -> result.source().getName()).containsExactly("revelation.xml", "revelation.xml");
+        assertThat(outputDirectory.toFile().list()).containsExactly(RevelationToKeePassConverter.OUTPUT_FILE_PREFIX + "other.xml");
+    }
+
+    @Test
+    void shouldResolveGlobsAtAnyDepth(@TempDir Path tempDir) throws Exception {
+        Files.createDirectories(tempDir.resolve("vaults/old"));
+        for (String vault : List.of("vaults/top.xml", "vaults/old/nested.xml", "vaults/notes.txt")) {
+            Files.writeString(tempDir.resolve(vault), "<revelationdata/>");
+        }
+
+        assertThat(RevelationBatchConverter.resolveSources(tempDir + "/vaults/**/*.xml"))
+                .extracting(File::getName).containsExactlyInAnyOrder("top.xml", "nested.xml");
+        assertThat(RevelationBatchConverter.resolveSources(tempDir + "/vaults/*.xml"))
+                .extracting(File::getName).containsExactly("top.xml");
+    }
+}
@@ -0,0 +1,89 @@
+package org.g5.util.stream.json;
+
+import org.g5.util.NamedParameter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncJsonSpliteratorTest {
+
+    private static final JsonMapper jsonParser = JsonMapper.builder().build();
+
+    @ParameterizedTest(name = "{index}. {0}")
+    @MethodSource("testDataSource")
+    void shouldParseJsonFedInSmallChunks(NamedParameter<File> namedDataFile) throws Exception {
+        Map<String, Object> metadata = new ConcurrentHashMap<>();
+        AsyncJsonSpliterator jsonSpliterator = new AsyncJsonSpliterator("data", jsonParser, metadata, true);
+        RowCollector rowCollector = new RowCollector();
+        jsonSpliterator.subscribe(rowCollector);
+
+        byte[] data = Files.readAllBytes(namedDataFile.data().toPath());
+        try (SubmissionPublisher<List<ByteBuffer>> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(jsonSpliterator);
+            for (int offset = 0; offset < data.length; offset += 7) {//deliberately split tokens across chunks
+                publisher.submit(List.of(ByteBuffer.wrap(data, offset, Math.min(7, data.length - offset))));
+            }
+        }
+
+        List<JsonNode> jsonNodes = rowCollector.completion.get(10, TimeUnit.SECONDS);
+
+        assertThat(jsonNodes.size()).isEqualTo(5);
+        assertThat(jsonNodes.getFirst().get("address").get("city").asString()).isEqualTo("City1");
+        assertThat(metadata.size()).isEqualTo(3);
+        assertThat(metadata.get("rows")).isEqualTo(jsonNodes.size());
+    }
+
+    public static Stream<NamedParameter<File>> testDataSource() throws URISyntaxException, IOException {
+        return JsonSpliteratorTest.testDataSource();
+    }
+
+    /**
+     * Requests one row at a time, so the spliterator only ever pulls as many chunks as it needs.
+     */
+    private static final class RowCollector implements Flow.Subscriber<JsonNode> {
+
+        private final List<JsonNode> rows = new ArrayList<>();
+        private final CompletableFuture<List<JsonNode>> completion = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(JsonNode item) {
+            rows.add(item);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(rows);
+        }
+    }
+}
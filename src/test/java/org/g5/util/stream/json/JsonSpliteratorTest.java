@@ -1,6 +1,8 @@
 package org.g5.util.stream.json;
 
 import org.g5.util.NamedParameter;
+import org.g5.util.stream.json.JsonSpliterator.MetadataSection;
+import org.g5.util.stream.json.JsonSpliterator.ResumeToken;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import tools.jackson.databind.JsonNode;
@@ -10,12 +12,17 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -42,6 +49,64 @@ class JsonSpliteratorTest {
         assertThat(metadata.get("rows")).isEqualTo(jsonNodes.size());
     }
 
+    @ParameterizedTest(name = "{index}. {0}")
+    @MethodSource("testDataSource")
+    void shouldCompleteMetadataSectionsAsTheyAreRead(NamedParameter<File> namedDataFile) throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        JsonSpliterator jsonSpliterator = new JsonSpliterator("data", jsonParser,
+                metadata, true,
+                new BufferedInputStream(new FileInputStream(namedDataFile.data())));
+
+        Iterator<JsonNode> nodes = jsonSpliterator.iterator();
+        assertThat(jsonSpliterator.metadata(MetadataSection.BEFORE_LIST)).isCompleted();
+        assertThat(jsonSpliterator.metadata(MetadataSection.AFTER_LIST)).isNotDone();
+
+        nodes.forEachRemaining(node -> { });
+
+        Map<String, Object> allMetadata = jsonSpliterator.metadata(MetadataSection.AFTER_LIST).getNow(null);
+        assertThat(allMetadata).isEqualTo(metadata);
+        assertThat(jsonSpliterator.metadata(MetadataSection.AFTER_LIST, Paging.class).getNow(null))
+                .isEqualTo(new Paging(5, 1, "s"));
+    }
+
+    @ParameterizedTest(name = "{index}. {0}")
+    @MethodSource("testDataSource")
+    void shouldScanMetadataOnly(NamedParameter<File> namedDataFile) throws Exception {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(namedDataFile.data()))) {
+            Paging paging = JsonSpliterator.scanMetadata("data", jsonParser, inputStream, Paging.class);
+
+            assertThat(paging).isEqualTo(new Paging(5, 1, "s"));
+        }
+    }
+
+    @ParameterizedTest(name = "{index}. {0}")
+    @MethodSource("testDataSource")
+    void shouldResumeFromCheckpoint(NamedParameter<File> namedDataFile) throws Exception {
+        List<ResumeToken> checkpoints = new ArrayList<>();
+        JsonSpliterator jsonSpliterator = new JsonSpliterator("data", jsonParser,
+                new HashMap<>(), true,
+                new BufferedInputStream(new FileInputStream(namedDataFile.data())))
+                .checkpointEvery(2, checkpoints::add);
+
+        List<JsonNode> firstRows = jsonSpliterator.stream().limit(2).toList();
+        assertThat(firstRows.size()).isEqualTo(2);
+        assertThat(checkpoints.size()).isEqualTo(1);
+        assertThat(checkpoints.getFirst().rowsRead()).isEqualTo(2);
+
+        Map<String, Object> metadata = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(namedDataFile.data().toPath(), StandardOpenOption.READ)) {
+            List<JsonNode> remainingRows = JsonSpliterator.resume(checkpoints.getFirst(), jsonParser, metadata, channel)
+                    .stream().toList();
+
+            assertThat(remainingRows.size()).isEqualTo(3);
+            assertThat(remainingRows.getFirst().get("name").asString()).isEqualTo("Abc");
+            assertThat(metadata.size()).isEqualTo(3);
+            assertThat(metadata.get("rows")).isEqualTo(5);
+        }
+    }
+
+    public record Paging(int rows, int elapsed, String unit) {}
+
     @SuppressWarnings("all")
     public static Stream<NamedParameter<File>> testDataSource() throws URISyntaxException, IOException {
         URI dataFileDir = JsonSpliteratorTest.class.getResource("/json-spliterator").toURI();
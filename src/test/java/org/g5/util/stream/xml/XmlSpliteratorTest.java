@@ -6,12 +6,21 @@ import com.google.common.collect.Lists;
 import org.assertj.core.api.Assertions;
 import org.jdom2.Element;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.stream.StreamSource;
 import java.io.File;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -25,6 +34,8 @@ import static org.g5.util.Streams.sequential;
 class XmlSpliteratorTest {
 	
 	private static final String emptyXmlDoc = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><root/>";
+	private static final String namespacedXmlDoc = "<r xmlns:a=\"urn:a\" xmlns:b=\"urn:b\"><a:item>1</a:item><b:item>2</b:item>"
+			+ "<x><a:item>3</a:item></x><other>4</other></r>";
 
     @Test
     void shouldIterateOverElementsCorrectly() throws Exception {
@@ -35,6 +46,7 @@ class XmlSpliteratorTest {
             elementList.add(xmlSpliterator.next());
         }
         assertThat(elementList.size()).isEqualTo(4);
+        assertThat(elementList).allMatch(e -> e.getParent() == null);
     }
     
     @Test
@@ -93,6 +105,110 @@ class XmlSpliteratorTest {
         assertThat(size).isEqualTo(0);
     }
 
+    @Test
+    void shouldBindElementsWithoutBuildingTrees() throws Exception {
+        File sourceFile = new File(getClass().getResource("/xml-spliterator.xml").getFile());
+        XmlBindingSpliterator<Map<String, String>> pathTextSpliterator =
+                new XmlBindingSpliterator<>(new StreamSource(sourceFile), "child", XmlElementBinder.pathTexts());
+        List<String> valueList = sequential(pathTextSpliterator).map(texts -> texts.get("subchild")).toList();
+        assertThat(valueList).containsExactly("abc", "def", "ghi", "klm");
+
+        XmlBindingSpliterator<Group> groupSpliterator = new XmlBindingSpliterator<>(new StreamSource(sourceFile), "group",
+                reader -> {
+                    Group group = new Group(reader.getAttributeValue(null, "id"));
+                    XmlElementBinder.skipElement(reader);
+                    return group;
+                });
+        assertThat(sequential(groupSpliterator).toList()).containsExactly(new Group("1"), new Group("2"));
+    }
+
+    private record Group(String id) {}
+
+    @Test
+    void shouldSplitOnQualifiedNamesAndPaths() throws Exception {
+        File sourceFile = new File(getClass().getResource("/xml-spliterator.xml").getFile());
+        assertThat(sequential(new XmlSpliterator(new StreamSource(sourceFile), "/root/group")).count()).isEqualTo(2L);
+        assertThat(sequential(new XmlSpliterator(new StreamSource(sourceFile), "/root/child")).count()).isEqualTo(0L);
+        assertThat(sequential(new XmlSpliterator(new StreamSource(sourceFile), "group/child")).count()).isEqualTo(4L);
+
+        assertThat(textsOf(new XmlSpliterator(new StreamSource(new StringReader(namespacedXmlDoc)), "{urn:a}item")))
+                .containsExactly("1", "3");
+        assertThat(textsOf(new XmlSpliterator(new StreamSource(new StringReader(namespacedXmlDoc)), "/r/{urn:a}item")))
+                .containsExactly("1");
+        assertThat(textsOf(new XmlSpliterator(new StreamSource(new StringReader(namespacedXmlDoc)),
+                ElementSelector.parseAll("/r/{urn:b}item", "other"))))
+                .containsExactly("2", "4");
+    }
+
+    @Test
+    void shouldSplitLargeFilesInParallelChunks(@TempDir Path tempDir) throws Exception {
+        Path xmlFile = tempDir.resolve("trades.xml");
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<t:trades xmlns:t=\"urn:trades\">\n<t:header/>\n");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("  <t:trade id=\"").append(i).append("\"><t:notional>").append(i * 100).append("</t:notional></t:trade>\n");
+        }
+        Files.writeString(xmlFile, xml.append("</t:trades>\n"));
+
+        try (Stream<Element> trades = ParallelXmlSpliterator.stream(xmlFile, "trade", 512, true)) {
+            List<Element> tradeList = trades.toList();
+            assertThat(tradeList).hasSize(1000);
+            assertThat(tradeList).extracting(e -> e.getAttributeValue("id"))
+                    .containsExactlyElementsOf(IntStream.range(0, 1000).mapToObj(String::valueOf).toList());
+            assertThat(tradeList).allMatch(e -> "urn:trades".equals(e.getNamespaceURI()));
+        }
+        try (Stream<Element> trades = ParallelXmlSpliterator.stream(xmlFile, "/trades/{urn:trades}trade", 512, true)) {
+            assertThat(trades.count()).isEqualTo(1000);
+        }
+        try (Stream<Element> trades = ParallelXmlSpliterator.stream(xmlFile, "{urn:other}trade", 512, true)) {
+            assertThat(trades.count()).isZero();
+        }
+        Assertions.assertThatThrownBy(() -> ParallelXmlSpliterator.stream(xmlFile, "t:trade", 512, true))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldNotResolveExternalEntitiesByDefault(@TempDir Path tempDir) throws Exception {
+        Path secret = Files.writeString(tempDir.resolve("secret.txt"), "top-secret");
+        String xxeXmlDoc = "<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY x SYSTEM \"" + secret.toUri() + "\">]>"
+                + "<r><item>&x;</item></r>";
+        //pinned to the JDK's parser, so the outcome is the same whatever else is on the classpath
+        XmlReaderFactory jdkReaderFactory = XmlReaderFactory.builder().preferredImplementations().build();
+        List<XMLStreamException> readFailures = new ArrayList<>();
+        XmlSpliterator xmlSpliterator = new XmlSpliterator(new StreamSource(new StringReader(xxeXmlDoc)),
+                ElementSelector.parseAll("item"), jdkReaderFactory) {
+            @Override
+            protected void onReadFailure(XMLStreamException e) {
+                readFailures.add(e);
+            }
+        };
+        //with DTDs unsupported the entity is never declared - so reading fails on it, rather than expanding it
+        assertThat(textsOf(xmlSpliterator)).isEmpty();
+        assertThat(readFailures).singleElement()
+                .satisfies(e -> assertThat(e).hasMessageContaining("\"x\" was referenced, but not declared"));
+    }
+
+    @Test
+    void shouldPassThroughEverythingOutsideSplitElements() throws Exception {
+        String xmlDoc = "<r><a>1</a><item>x</item><!--note--><b k=\"v\">2</b><item>y</item></r>";
+        StringWriter output = new StringWriter();
+        XMLStreamWriter xmlStreamWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(output);
+        XmlSpliterator xmlSpliterator = new XmlSpliterator(new StreamSource(new StringReader(xmlDoc)), "item",
+                new PassThroughXmlWriter(xmlStreamWriter));
+        assertThat(textsOf(xmlSpliterator)).containsExactly("x", "y");
+        assertThat(output.toString()).endsWith("<r><a>1</a><!--note--><b k=\"v\">2</b></r>");
+    }
+
+    @Test
+    void shouldTakeANullHandlerForASplitElementName() throws Exception {
+        //with a reader factory only taken alongside selectors, a null handler is not ambiguous
+        XmlSpliterator xmlSpliterator = new XmlSpliterator(new StreamSource(new StringReader(namespacedXmlDoc)), "other", null);
+        assertThat(textsOf(xmlSpliterator)).containsExactly("4");
+    }
+
+    private static List<String> textsOf(XmlSpliterator xmlSpliterator) {
+        return sequential(xmlSpliterator).map(Element::getText).toList();
+    }
+
     private List<String> toXmlContentList(XmlSpliterator xmlSpliterator) {
         return StreamSupport.stream(Spliterators.spliteratorUnknownSize(xmlSpliterator.iterator(), Spliterator.ORDERED), false)
             .map(input -> new ElementTextExtractor().apply(input)).collect(Collectors.toList());
@@ -0,0 +1,128 @@
+package org.g5.yf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.g5.yf.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * I stand in for Yahoo Finance on localhost - serving a recorded chart for any <code>/v8/finance/chart/</code> request,
+ * and a recorded quote page for any <code>/quote/</code> one - so the HTTP stack can be tested, and measured, offline.
+ * <p>
+ * Every response can be delayed, every n-th request failed with a given status, and bodies gzipped and/or sent chunked.
+ * I may be reconfigured while serving.
+ */
+public class FakeYahooServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final byte[] chart = resource("/yf-chart/chart.json");
+    private final byte[] quotePage = resource("/yf-quote/quote.html");
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile int failEvery;
+    private volatile HttpStatus failureStatus = HttpStatus.SERVICE_UNAVAILABLE;
+    private volatile boolean gzip;
+    private volatile boolean chunked;
+
+    public FakeYahooServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v8/finance/chart/", exchange -> serve(exchange, chart, "application/json"));
+        server.createContext("/quote/", exchange -> serve(exchange, quotePage, "text/html; charset=utf-8"));
+        server.start();
+    }
+
+    public URI baseUri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    public FakeYahooServer latency(Duration latency) {
+        this.latency = Objects.requireNonNull(latency);
+        return this;
+    }
+
+    /**
+     * Fails every n-th request with the given status - <code>0</code> fails none.
+     */
+    public FakeYahooServer failEvery(int nth, HttpStatus failureStatus) {
+        this.failureStatus = Objects.requireNonNull(failureStatus);
+        this.failEvery = nth;
+        return this;
+    }
+
+    public FakeYahooServer gzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    public FakeYahooServer chunked(boolean chunked) {
+        this.chunked = chunked;
+        return this;
+    }
+
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange, byte[] payload, String contentType) throws IOException {
+        try (exchange) {
+            long request = requestCount.incrementAndGet();
+            if (latency.isPositive()) {
+                Thread.sleep(latency);
+            }
+            int nth = failEvery;
+            if (nth > 0 && request % nth == 0) {
+                exchange.sendResponseHeaders(failureStatus.code(), -1);
+                return;
+            }
+            byte[] body = payload;
+            String acceptEncoding = Objects.requireNonNullElse(exchange.getRequestHeaders().getFirst("Accept-Encoding"), "");
+            if (gzip && acceptEncoding.contains("gzip")) {
+                body = gzipped(payload);
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            //a length of 0 makes the server send the body chunked
+            exchange.sendResponseHeaders(HttpStatus.OK.code(), chunked ? 0 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] gzipped(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 4);
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(payload);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] resource(String name) {
+        try (InputStream in = FakeYahooServer.class.getResourceAsStream(name)) {
+            return Objects.requireNonNull(in, name).readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.g5.yf;
+
+import org.g5.yf.chart.OhlcvSeries;
+import org.g5.yf.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class YFinanceApiTest {
+
+    private FakeYahooServer server;
+    private YFinanceApi api;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FakeYahooServer().gzip(true).chunked(true);
+        api = new YFinanceApi(server.baseUri(), server.baseUri(), null);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void shouldDecodeChartSeries() {
+        OhlcvSeries series = api.getStockSeries("AAPL");
+
+        assertThat(series.symbol()).isEqualTo("AAPL");
+        assertThat(series.timestamps()).containsExactly(1760794200L, 1760794260L, 1760794320L, 1760794380L);
+    }
+
+    @Test
+    void shouldExtractQuotePageData() {
+        Map<String, JsonNode> data = api.getData("AAPL");
+
+        assertThat(data).hasSize(2);
+        assertThat(data.entrySet()).anySatisfy(entry -> {
+            assertThat(entry.getKey()).contains("finance/quoteSummary");
+            assertThat(entry.getValue().at("/body/quoteSummary/result/0/price/regularMarketPrice/raw").asDouble()).isEqualTo(252.5);
+        });
+    }
+
+    @Test
+    void shouldFetchBatchesThroughTransientFailures() {
+        server.failEvery(3, HttpStatus.SERVICE_UNAVAILABLE);
+
+        List<YFinanceApi.TickerResult<OhlcvSeries>> results = api.getStockSeries(List.of("AAPL", "MSFT", "AAPL", "GOOG")).toList();
+
+        assertThat(results).extracting(YFinanceApi.TickerResult::ticker).containsExactlyInAnyOrder("AAPL", "MSFT", "GOOG");
+        assertThat(results).allMatch(YFinanceApi.TickerResult::succeeded);
+    }
+
+    @Test
+    void shouldFetchEachDistinctTickerOnce() {
+        Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+
+        List<YFinanceApi.TickerResult<String>> results = api.fetchAll(List.of("AAPL", "MSFT", "AAPL", "AAPL"),
+                new ConcurrentHashMap<>(), counting(fetches, ticker -> ticker.toLowerCase(Locale.ROOT))).toList();
+
+        assertThat(results).extracting(YFinanceApi.TickerResult::data).containsExactlyInAnyOrder("aapl", "msft");
+        assertThat(fetches.get("AAPL")).hasValue(1);
+    }
+
+    @Test
+    void shouldJoinATickerAlreadyInFlightInAnotherBatch() throws Exception {
+        Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, String> fetch = counting(fetches, ticker -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ticker.toLowerCase(Locale.ROOT);
+        });
+
+        //the first batch is still fetching MSFT when the second asks for it
+        Stream<YFinanceApi.TickerResult<String>> first = api.fetchAll(List.of("AAPL", "MSFT"), inFlight, fetch);
+        Stream<YFinanceApi.TickerResult<String>> second = api.fetchAll(List.of("MSFT", "GOOG"), inFlight, fetch);
+        release.countDown();
+
+        assertThat(first.toList()).extracting(YFinanceApi.TickerResult::data).containsExactlyInAnyOrder("aapl", "msft");
+        assertThat(second.toList()).extracting(YFinanceApi.TickerResult::data).containsExactlyInAnyOrder("msft", "goog");
+        assertThat(fetches.get("MSFT")).hasValue(1);
+    }
+
+    @Test
+    void shouldFailATickerWhoseFetchThrowsAnError() {
+        Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+        Function<String, String> fetch = counting(fetches, ticker -> {
+            if ("AAPL".equals(ticker)) {
+                throw new StackOverflowError();
+            }
+            return ticker.toLowerCase(Locale.ROOT);
+        });
+
+        List<YFinanceApi.TickerResult<String>> results = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> api.fetchAll(List.of("AAPL", "MSFT"), inFlight, fetch).toList());
+
+        assertThat(results).filteredOn(result -> !result.succeeded()).singleElement()
+                .satisfies(result -> assertThat(result.failure()).isInstanceOf(StackOverflowError.class));
+        //the failed ticker is no longer in flight - so the next batch fetches it afresh
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> api.fetchAll(List.of("AAPL"), inFlight, fetch).toList());
+        assertThat(fetches.get("AAPL")).hasValue(2);
+    }
+
+    private static Function<String, String> counting(Map<String, AtomicInteger> fetches, Function<String, String> fetch) {
+        return ticker -> {
+            fetches.computeIfAbsent(ticker, t -> new AtomicInteger()).incrementAndGet();
+            return fetch.apply(ticker);
+        };
+    }
+}
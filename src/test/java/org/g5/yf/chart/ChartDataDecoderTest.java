@@ -0,0 +1,41 @@
+package org.g5.yf.chart;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChartDataDecoderTest {
+
+    private static final JsonMapper jsonParser = JsonMapper.builder().build();
+
+    @Test
+    void shouldDecodeChartColumns() throws Exception {
+        OhlcvSeries series;
+        try (InputStream chartData = getClass().getResourceAsStream("/yf-chart/chart.json")) {
+            series = new ChartDataDecoder(jsonParser).decode(chartData);
+        }
+
+        assertThat(series.symbol()).isEqualTo("AAPL");
+        assertThat(series.size()).isEqualTo(4);
+        assertThat(series.timestamps()).containsExactly(1760794200L, 1760794260L, 1760794320L, 1760794380L);
+        assertThat(series.open()[0]).isEqualTo(252.1);
+        assertThat(series.close()[3]).isEqualTo(252.5);
+        assertThat(series.high()[1]).isNaN();
+        assertThat(series.low()[1]).isNaN();
+        assertThat(series.volume()).containsExactly(1200L, 0L, 3400L, 5600L);
+        assertThat(series.lastTimestamp()).isEqualTo(1760794380L);
+    }
+
+    @Test
+    void shouldReportChartErrors() throws Exception {
+        try (InputStream chartData = getClass().getResourceAsStream("/yf-chart/error.json")) {
+            assertThatThrownBy(() -> new ChartDataDecoder(jsonParser).decode(chartData))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Not Found");
+        }
+    }
+}
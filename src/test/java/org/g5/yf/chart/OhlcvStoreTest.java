@@ -0,0 +1,79 @@
+package org.g5.yf.chart;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OhlcvStoreTest {
+
+    @TempDir
+    Path storeDirectory;
+
+    @Test
+    void shouldAppendOnlyNewClosedBars() {
+        OhlcvStore store = new OhlcvStore(storeDirectory);
+        assertThat(store.lastTimestamp("AAPL")).isEqualTo(Long.MIN_VALUE);
+        assertThat(store.read("AAPL", 0).isEmpty()).isTrue();
+
+        //the bar at 180 is still being traded
+        assertThat(store.append("AAPL", series(0, 60, 120, 180), 180)).isEqualTo(3);
+        assertThat(store.lastTimestamp("AAPL")).isEqualTo(120);
+        //overlapping bars are ignored
+        assertThat(store.append("AAPL", series(120, 180, 240), 300)).isEqualTo(2);
+
+        OhlcvSeries stored = store.read("AAPL", 0);
+        assertThat(stored.timestamps()).containsExactly(0L, 60L, 120L, 180L, 240L);
+        assertThat(stored.close()).containsExactly(1.5, 61.5, 121.5, 181.5, 241.5);
+        assertThat(stored.volume()).containsExactly(0L, 60L, 120L, 180L, 240L);
+        assertThat(store.read("AAPL", 100).timestamps()).containsExactly(120L, 180L, 240L);
+        assertThat(new OhlcvStore(storeDirectory).read("^GSPC", 0).isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldServeStoredBarsFollowedByFetchedOnes() {
+        OhlcvStore store = new OhlcvStore(storeDirectory);
+        store.append("AAPL", series(0, 60), 120);
+        OhlcvSeries merged = store.read("AAPL", 0).followedBy(series(60, 120, 180));
+        assertThat(merged.timestamps()).containsExactly(0L, 60L, 120L, 180L);
+        assertThat(merged.open()).containsExactly(0.0, 60.0, 120.0, 180.0);
+    }
+
+    @Test
+    void shouldIgnoreAndRepairAnInterruptedAppend() throws Exception {
+        OhlcvStore store = new OhlcvStore(storeDirectory);
+        store.append("AAPL", series(0, 60), 120);
+        //as if a crash cut the append off after the open column
+        try (FileChannel open = FileChannel.open(storeDirectory.resolve("AAPL").resolve("open.col"), StandardOpenOption.APPEND)) {
+            open.write(ByteBuffer.allocate(Long.BYTES));
+        }
+        assertThat(store.read("AAPL", 0).timestamps()).containsExactly(0L, 60L);
+
+        store.append("AAPL", series(120), 180);
+        OhlcvSeries stored = store.read("AAPL", 0);
+        assertThat(stored.timestamps()).containsExactly(0L, 60L, 120L);
+        assertThat(stored.open()).containsExactly(0.0, 60.0, 120.0);
+    }
+
+    private static OhlcvSeries series(long... timestamps) {
+        int size = timestamps.length;
+        double[] open = new double[size];
+        double[] high = new double[size];
+        double[] low = new double[size];
+        double[] close = new double[size];
+        long[] volume = new long[size];
+        for (int i = 0; i < size; i++) {
+            open[i] = timestamps[i];
+            high[i] = timestamps[i] + 2;
+            low[i] = timestamps[i] - 1;
+            close[i] = timestamps[i] + 1.5;
+            volume[i] = timestamps[i];
+        }
+        return new OhlcvSeries("AAPL", timestamps, open, high, low, close, volume);
+    }
+}
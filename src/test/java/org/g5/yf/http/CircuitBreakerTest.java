@@ -0,0 +1,32 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    @Test
+    void shouldOpenAfterConsecutiveUpstreamFailuresAndCloseAfterATrial() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, Duration.ofMillis(50));
+        circuitBreaker.record("a.example", new IOException("reset"));
+        //a client error is still an answer - the host is up
+        circuitBreaker.record("a.example", new HttpRequestProcessor.RequestFailedException(HttpStatus.NOT_FOUND, "missing"));
+        circuitBreaker.record("a.example", new HttpRequestProcessor.RequestFailedException(HttpStatus.BAD_GATEWAY, "down"));
+        assertThat(circuitBreaker.refusal("a.example")).isEmpty();
+
+        circuitBreaker.record("a.example", new HttpRequestProcessor.RequestFailedException(HttpStatus.BAD_GATEWAY, "down"));
+        assertThat(circuitBreaker.refusal("a.example")).isPresent();
+        assertThat(circuitBreaker.refusal("b.example")).isEmpty();
+
+        Thread.sleep(60);
+        //one trial is let through, the rest still refused until it completes
+        assertThat(circuitBreaker.refusal("a.example")).isEmpty();
+        assertThat(circuitBreaker.refusal("a.example")).isPresent();
+        circuitBreaker.record("a.example", null);
+        assertThat(circuitBreaker.refusal("a.example")).isEmpty();
+    }
+}
@@ -0,0 +1,69 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentDecodingBodyHandlerTest {
+
+    private static final String BODY = "{\"chart\":{\"result\":[{\"meta\":{\"symbol\":\"AAPL\"}}]}}";
+
+    private final ContentDecodingBodyHandler handler = ContentDecodingBodyHandler.defaultHandler();
+
+    @Test
+    void shouldDecodeSupportedEncodings() throws IOException {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        assertThat(decode("gzip", gzip(body))).isEqualTo(BODY);
+        assertThat(decode("deflate", deflate(body))).isEqualTo(BODY);
+        assertThat(decode("identity", body)).isEqualTo(BODY);
+        //applied deflate first, then gzip - so undone in reverse
+        assertThat(decode("deflate, GZIP", gzip(deflate(body)))).isEqualTo(BODY);
+        assertThat(decode("gzip", new byte[0])).isEmpty();
+    }
+
+    @Test
+    void shouldFailOnFirstReadOfUnsupportedEncoding() {
+        InputStream decoded = handler.decoding("compress", new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThatThrownBy(decoded::read)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("compress");
+    }
+
+    @Test
+    void shouldAdvertiseOnlyWhatItDecodes() {
+        assertThat(handler.acceptEncoding()).contains("gzip", "deflate");
+        assertThat(handler.withDecoder("custom", encoded -> encoded).acceptEncoding()).endsWith("custom");
+    }
+
+    private String decode(String contentEncoding, byte[] encoded) throws IOException {
+        try (InputStream decoded = handler.decoding(contentEncoding, new ByteArrayInputStream(encoded))) {
+            return new String(decoded.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(encoded)) {
+            out.write(body);
+        }
+        return encoded.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(encoded)) {
+            out.write(body);
+        }
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingPolicyTest {
+
+    @Test
+    void shouldNotHedgeUntilEnoughLatenciesHaveBeenSeen() {
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(95, Duration.ofMillis(1));
+        for (int i = 0; i < 19; i++) {
+            hedgingPolicy.recordLatency(Duration.ofMillis(10));
+        }
+        assertThat(hedgingPolicy.hedgeDelay()).isEmpty();
+
+        hedgingPolicy.recordLatency(Duration.ofMillis(10));
+        assertThat(hedgingPolicy.hedgeDelay()).contains(Duration.ofMillis(10));
+    }
+
+    @Test
+    void shouldHedgeAtThePercentileOfRecentLatencies() {
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(95, Duration.ofMillis(1), 100);
+        //recorded out of order - 100ms down to 1ms
+        for (int millis = 100; millis > 0; millis--) {
+            hedgingPolicy.recordLatency(Duration.ofMillis(millis));
+        }
+        assertThat(hedgingPolicy.hedgeDelay()).contains(Duration.ofMillis(95));
+
+        //only the window is kept - a hundred fast requests push every slow one out
+        for (int i = 0; i < 100; i++) {
+            hedgingPolicy.recordLatency(Duration.ofMillis(2));
+        }
+        assertThat(hedgingPolicy.hedgeDelay()).contains(Duration.ofMillis(2));
+    }
+
+    @Test
+    void shouldNeverHedgeSoonerThanTheMinimumDelay() {
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(50, Duration.ofMillis(250));
+        for (int i = 0; i < 20; i++) {
+            hedgingPolicy.recordLatency(Duration.ofMillis(5));
+        }
+        assertThat(hedgingPolicy.hedgeDelay()).contains(Duration.ofMillis(250));
+    }
+}
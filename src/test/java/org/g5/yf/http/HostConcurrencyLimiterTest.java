@@ -0,0 +1,37 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostConcurrencyLimiterTest {
+
+    @Test
+    void shouldQueueRequestsOverTheLimitPerHost() throws Exception {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(2);
+        CompletableFuture<HostConcurrencyLimiter.Permit> first = limiter.acquire("a.example");
+        CompletableFuture<HostConcurrencyLimiter.Permit> second = limiter.acquire("a.example");
+        CompletableFuture<HostConcurrencyLimiter.Permit> cancelled = limiter.acquire("a.example");
+        CompletableFuture<HostConcurrencyLimiter.Permit> waiting = limiter.acquire("a.example");
+        CompletableFuture<HostConcurrencyLimiter.Permit> otherHost = limiter.acquire("b.example");
+
+        assertThat(first).isDone();
+        assertThat(second).isDone();
+        assertThat(cancelled).isNotDone();
+        assertThat(waiting).isNotDone();
+        assertThat(otherHost).isDone();
+
+        cancelled.cancel(false);
+        first.get().release();
+        //releasing twice must not hand out a second permit
+        first.get().release();
+        assertThat(waiting).isDone();
+        assertThat(limiter.inFlight("a.example")).isEqualTo(2);
+
+        second.get().release();
+        waiting.get().release();
+        assertThat(limiter.inFlight("a.example")).isZero();
+    }
+}
@@ -0,0 +1,53 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostRateLimiterTest {
+
+    @Test
+    void shouldAllowABurstThenQueueAtTheRate() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(20, 2);
+        assertThat(limiter.acquire("a.example", RequestPriority.BULK)).isDone();
+        assertThat(limiter.acquire("a.example", RequestPriority.BULK)).isDone();
+        CompletableFuture<Void> queued = limiter.acquire("a.example", RequestPriority.BULK);
+        assertThat(queued).isNotDone();
+        assertThat(limiter.queued("a.example")).isEqualTo(1);
+        //every host has a bucket of its own
+        assertThat(limiter.acquire("b.example", RequestPriority.BULK)).isDone();
+
+        queued.get(1, TimeUnit.SECONDS);
+        assertThat(limiter.queued("a.example")).isZero();
+    }
+
+    @Test
+    void shouldLetInteractiveRequestsThroughFirst() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(10, 1);
+        limiter.acquire("a.example", RequestPriority.BULK);
+        List<CompletableFuture<Void>> bulk = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            bulk.add(limiter.acquire("a.example", RequestPriority.BULK));
+        }
+        CompletableFuture<Void> interactive = limiter.acquire("a.example", RequestPriority.INTERACTIVE);
+
+        interactive.get(1, TimeUnit.SECONDS);
+        assertThat(bulk).noneMatch(CompletableFuture::isDone);
+        CompletableFuture.allOf(bulk.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldHoldRequestsWhileBackingOff() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(1000, 10);
+        limiter.backOff("a.example", Duration.ofMillis(200));
+        long start = System.nanoTime();
+        limiter.acquire("a.example", RequestPriority.INTERACTIVE).get(1, TimeUnit.SECONDS);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(150));
+    }
+}
@@ -0,0 +1,46 @@
+package org.g5.yf.http;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.g5.yf.FakeYahooServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpClientMetricsTest {
+
+    @Test
+    void shouldCountResponsesByVersionAndReleaseStreams() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HttpClientMetrics metrics = new HttpClientMetrics(registry);
+        HttpClientConfig config = HttpClientConfig.builder().build();
+        try (FakeYahooServer server = new FakeYahooServer().failEvery(3, HttpStatus.NOT_FOUND);
+             HttpClient httpClient = config.newHttpClient()) {
+            HttpRequestProcessor<InputStream> processor = HttpRequestProcessor.<InputStream>builder(httpClient)
+                    .requestTimeout(config.requestTimeout())
+                    .metrics(metrics)
+                    .build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(server.baseUri() + "/v8/finance/chart/AAPL")).GET().build();
+
+            for (int i = 0; i < 2; i++) {
+                try (InputStream body = processor.execute(request, HttpResponse.BodyHandlers.ofInputStream())) {
+                    body.readAllBytes();
+                }
+            }
+            assertThatThrownBy(() -> processor.execute(request, HttpResponse.BodyHandlers.ofInputStream()))
+                    .isInstanceOf(HttpRequestProcessor.RequestFailedException.class);
+
+            //the stand-in speaks HTTP/1.1 only - so the preferred HTTP/2 falls back, failures included
+            assertThat(registry.get(HttpClientMetrics.RESPONSES).tag("host", "localhost").tag("version", "HTTP_1_1")
+                    .counter().count()).isEqualTo(3);
+            assertThat(metrics.activeStreams("localhost")).isZero();
+            assertThat(registry.get(HttpClientMetrics.ACTIVE_STREAMS).tag("host", "localhost").gauge().value()).isZero();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.g5.yf.http;
+
+import org.g5.yf.FakeYahooServer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpRequestProcessorLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpRequestProcessorLoadTest.class);
+
+    @Test
+    void shouldSustainLoadThroughTransientFailures() throws Exception {
+        try (FakeYahooServer server = new FakeYahooServer().latency(Duration.ofMillis(2)).gzip(true).chunked(true)
+                .failEvery(50, HttpStatus.SERVICE_UNAVAILABLE);
+             HttpClient httpClient = HttpClient.newHttpClient()) {
+            ContentDecodingBodyHandler contentDecoding = ContentDecodingBodyHandler.defaultHandler();
+            HttpRequestProcessor<InputStream> processor = HttpRequestProcessor.<InputStream>builder(httpClient)
+                    .concurrencyLimiter(new HostConcurrencyLimiter(16))
+                    .requestTimeout(Duration.ofSeconds(5))
+                    .retryPolicy(RetryPolicy.builder().baseDelay(Duration.ofMillis(5)).build())
+                    .build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(server.baseUri() + "/v8/finance/chart/AAPL"))
+                    .header("Accept-Encoding", contentDecoding.acceptEncoding())
+                    .GET()
+                    .build();
+
+            LoadHarness.Report report = LoadHarness.run(500, 32, () -> {
+                try (InputStream body = processor.execute(request, contentDecoding)) {
+                    return body.readAllBytes().length;
+                }
+            });
+            log.info("Chart fetches: {}", report);
+
+            assertThat(report.failures()).isZero();
+            //every failed request was retried
+            assertThat(server.requestCount()).isGreaterThan(500);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.g5.yf.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.g5.yf.FakeYahooServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpRequestProcessorTest {
+
+    private HttpServer scriptedServer;
+
+    @AfterEach
+    void stopServer() {
+        if (Objects.nonNull(scriptedServer)) {
+            scriptedServer.stop(0);
+        }
+    }
+
+    @Test
+    void shouldCancelARequestWaitingForAPermitWhenInterrupted() throws Exception {
+        try (FakeYahooServer server = new FakeYahooServer().latency(Duration.ofMillis(300));
+             HttpClient httpClient = HttpClient.newHttpClient()) {
+            HostConcurrencyLimiter concurrencyLimiter = new HostConcurrencyLimiter(1);
+            HttpRequestProcessor<InputStream> processor = HttpRequestProcessor.<InputStream>builder(httpClient)
+                    .concurrencyLimiter(concurrencyLimiter)
+                    .build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(server.baseUri() + "/v8/finance/chart/AAPL")).GET().build();
+
+            //the only permit is taken - so the caller below blocks waiting for it
+            CompletableFuture<InputStream> first = processor.executeAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+            AtomicReference<Throwable> callerFailure = new AtomicReference<>();
+            Thread caller = Thread.ofVirtual().start(() -> {
+                try (InputStream body = processor.execute(request, HttpResponse.BodyHandlers.ofInputStream())) {
+                    body.readAllBytes();
+                } catch (Exception e) {
+                    callerFailure.set(e);
+                }
+            });
+            Thread.sleep(50);
+            caller.interrupt();
+            caller.join(1000);
+            assertThat(callerFailure.get()).isInstanceOf(InterruptedException.class);
+
+            try (InputStream body = first.get()) {
+                body.readAllBytes();
+            }
+            //the permit released by the first request is not handed to the cancelled one - which is never sent
+            Thread.sleep(400);
+            assertThat(concurrencyLimiter.inFlight("localhost")).isZero();
+            assertThat(server.requestCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldFailFastWithoutRetryingWhileTheCircuitIsOpen() throws Exception {
+        try (FakeYahooServer server = new FakeYahooServer();
+             HttpClient httpClient = HttpClient.newHttpClient()) {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(1, Duration.ofSeconds(30));
+            circuitBreaker.record("localhost", new IOException("reset"));
+            HttpRequestProcessor<InputStream> processor = HttpRequestProcessor.<InputStream>builder(httpClient)
+                    .circuitBreaker(circuitBreaker)
+                    .retryPolicy(RetryPolicy.builder().maxAttempts(5).build())
+                    .build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(server.baseUri() + "/v8/finance/chart/AAPL")).GET().build();
+
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> processor.execute(request, HttpResponse.BodyHandlers.ofInputStream()))
+                    .isInstanceOf(HttpRequestProcessor.CircuitOpenException.class);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+            assertThat(server.requestCount()).isZero();
+        }
+    }
+
+    @Test
+    void shouldTakeTheFirstCopyToSucceedAndCloseTheLosersBody() throws Exception {
+        URI uri = serve(new Copy("slow", 500, 200), new Copy("hedge", 0, 200));
+        Queue<String> closedCopies = new ConcurrentLinkedQueue<>();
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            long start = System.nanoTime();
+            InputStream body = hedgingProcessor(httpClient).execute(HttpRequest.newBuilder(uri).GET().build(), closeTracking(closedCopies));
+
+            assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("hedge");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+            //the slow copy still answers - and its body, never read, is closed
+            awaitUntil(() -> !closedCopies.isEmpty());
+            assertThat(closedCopies).containsExactly("slow");
+            body.close();
+        }
+    }
+
+    @Test
+    void shouldSucceedWhileAnyCopyIsOutstanding() throws Exception {
+        //the first copy fails before the hedge answers
+        URI uri = serve(new Copy("slow", 200, 503), new Copy("hedge", 400, 200));
+        try (HttpClient httpClient = HttpClient.newHttpClient();
+             InputStream body = hedgingProcessor(httpClient).execute(HttpRequest.newBuilder(uri).GET().build(),
+                     HttpResponse.BodyHandlers.ofInputStream())) {
+            assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("hedge");
+        }
+    }
+
+    @Test
+    void shouldFailOnlyOnceEveryCopyHasFailed() throws Exception {
+        URI uri = serve(new Copy("slow", 200, 503), new Copy("hedge", 400, 502));
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            HttpRequestProcessor<InputStream> processor = hedgingProcessor(httpClient);
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> processor.execute(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofInputStream()))
+                    .isInstanceOfSatisfying(HttpRequestProcessor.RequestFailedException.class,
+                            e -> assertThat(e.getResponseStatus()).isEqualTo(HttpStatus.BAD_GATEWAY));
+            //failed by the hedge, not by the first copy to fail
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(400));
+        }
+    }
+
+    /**
+     * @return a processor hedging after 50ms - having seen only fast requests.
+     */
+    private static HttpRequestProcessor<InputStream> hedgingProcessor(HttpClient httpClient) {
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(95, Duration.ofMillis(50));
+        for (int i = 0; i < 20; i++) {
+            hedgingPolicy.recordLatency(Duration.ofMillis(1));
+        }
+        return HttpRequestProcessor.<InputStream>builder(httpClient).hedgingPolicy(hedgingPolicy).build();
+    }
+
+    /**
+     * How the server answers one request: after a delay, with a status - and the copy's name, as a header and body.
+     */
+    private record Copy(String name, long delayMillis, int status) {
+    }
+
+    /**
+     * Starts a server answering each request with the next of the given copies.
+     */
+    private URI serve(Copy... copies) throws IOException {
+        List<Copy> script = List.of(copies);
+        AtomicInteger requests = new AtomicInteger();
+        scriptedServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        scriptedServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        scriptedServer.createContext("/copy", exchange -> {
+            try (exchange) {
+                Copy copy = script.get(requests.getAndIncrement());
+                Thread.sleep(copy.delayMillis());
+                byte[] body = copy.name().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("X-Copy", copy.name());
+                exchange.sendResponseHeaders(copy.status(), body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        scriptedServer.start();
+        return URI.create("http://localhost:" + scriptedServer.getAddress().getPort() + "/copy");
+    }
+
+    /**
+     * @return a streaming handler noting the name of each copy whose body is closed.
+     */
+    private static HttpResponse.BodyHandler<InputStream> closeTracking(Queue<String> closedCopies) {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                body -> new FilterInputStream(body) {
+                    @Override
+                    public void close() throws IOException {
+                        closedCopies.add(responseInfo.headers().firstValue("X-Copy").orElse(""));
+                        super.close();
+                    }
+                });
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
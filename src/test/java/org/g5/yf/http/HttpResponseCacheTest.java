@@ -0,0 +1,185 @@
+package org.g5.yf.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpResponseCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String BODY = "{\"quote\":\"AAPL\"}";
+
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private HttpClient httpClient;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/quote", exchange -> {
+            upstreamRequests.incrementAndGet();
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            if (exchange.getRequestURI().getPath().endsWith("slow")) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        httpClient.close();
+    }
+
+    @Test
+    void shouldServeFreshResponsesWithoutGoingUpstream() throws Exception {
+        HttpResponseCache cache = HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient))
+                .defaultTtl(Duration.ofMinutes(1))
+                .build();
+        for (int i = 0; i < 10; i++) {
+            assertThat(read(cache.fetch(get("/quote/AAPL")))).isEqualTo(BODY);
+        }
+        assertThat(upstreamRequests).hasValue(1);
+        assertThat(cache.hitCount()).isEqualTo(9);
+    }
+
+    @Test
+    void shouldRevalidateStaleResponses() throws Exception {
+        HttpResponseCache cache = HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient))
+                .defaultTtl(Duration.ZERO)
+                .build();
+        assertThat(read(cache.fetch(get("/quote/AAPL")))).isEqualTo(BODY);
+        assertThat(read(cache.fetch(get("/quote/AAPL")))).isEqualTo(BODY);
+        assertThat(upstreamRequests).hasValue(2);
+        assertThat(notModifiedResponses).hasValue(1);
+        assertThat(cache.revalidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShareOneUpstreamRequestBetweenConcurrentFetches() throws Exception {
+        HttpResponseCache cache = HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient)).build();
+        List<CompletableFuture<InputStream>> fetches = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            fetches.add(cache.fetchAsync(get("/quote/slow")));
+        }
+        release.countDown();
+        for (CompletableFuture<InputStream> fetch : fetches) {
+            assertThat(read(fetch.get(5, TimeUnit.SECONDS))).isEqualTo(BODY);
+        }
+        assertThat(upstreamRequests).hasValue(1);
+    }
+
+    @Test
+    void shouldRevalidateFromDiskAfterRestart(@TempDir Path cacheDirectory) throws Exception {
+        read(HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient))
+                .defaultTtl(Duration.ZERO)
+                .diskDirectory(cacheDirectory)
+                .build()
+                .fetch(get("/quote/AAPL")));
+        HttpResponseCache restarted = HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient))
+                .diskDirectory(cacheDirectory)
+                .build();
+        assertThat(read(restarted.fetch(get("/quote/AAPL")))).isEqualTo(BODY);
+        assertThat(notModifiedResponses).hasValue(1);
+    }
+
+    @Test
+    void shouldDeleteEntriesNoLongerWorthKeepingFromDisk(@TempDir Path cacheDirectory) throws Exception {
+        HttpResponseCache cache = HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient))
+                .defaultTtl(Duration.ZERO)
+                .retainStale(Duration.ZERO)
+                .diskDirectory(cacheDirectory)
+                .build();
+        read(cache.fetch(get("/quote/AAPL")));
+        assertThat(cachedFiles(cacheDirectory)).hasSize(1);
+
+        //with upstream gone, nothing is written back in its place
+        Thread.sleep(20);
+        server.stop(0);
+        assertThatThrownBy(() -> cache.fetch(get("/quote/AAPL")))
+                .isInstanceOf(HttpRequestProcessor.RequestFailedException.class);
+        assertThat(cachedFiles(cacheDirectory)).isEmpty();
+    }
+
+    @Test
+    void shouldKeepTheDiskDirectoryWithinItsBound(@TempDir Path cacheDirectory) throws Exception {
+        //room for two entries - not three
+        HttpResponseCache.Builder builder = HttpResponseCache.builder(new HttpRequestProcessor<>(httpClient))
+                .defaultTtl(Duration.ofMinutes(1))
+                .maxDiskBytes(200)
+                .diskDirectory(cacheDirectory);
+        HttpResponseCache cache = builder.build();
+        for (String ticker : List.of("AAPL", "MSFT", "GOOG")) {
+            read(cache.fetch(get("/quote/" + ticker)));
+            Thread.sleep(20);
+        }
+        assertThat(cachedFiles(cacheDirectory)).hasSize(2);
+
+        //the least recently written went first
+        HttpResponseCache restarted = builder.build();
+        read(restarted.fetch(get("/quote/GOOG")));
+        read(restarted.fetch(get("/quote/MSFT")));
+        assertThat(restarted.hitCount()).isEqualTo(2);
+        read(restarted.fetch(get("/quote/AAPL")));
+        assertThat(upstreamRequests).hasValue(4);
+    }
+
+    private static List<Path> cachedFiles(Path cacheDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.toList();
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getAddress().getPort() + path)).GET().build();
+    }
+
+    private static String read(InputStream body) throws IOException {
+        try (body) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
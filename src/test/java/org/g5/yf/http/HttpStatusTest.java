@@ -0,0 +1,42 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpStatusTest {
+
+    @Test
+    void shouldResolveKnownCodes() {
+        for (HttpStatus httpStatus : HttpStatus.values()) {
+            assertThat(HttpStatus.resolve(httpStatus.code())).isSameAs(httpStatus);
+        }
+        assertThat(HttpStatus.resolve(429)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(HttpStatus.resolve(418)).isEqualTo(HttpStatus.IM_A_TEAPOT);
+        assertThat(HttpStatus.resolve(511)).isEqualTo(HttpStatus.NETWORK_AUTHENTICATION_REQUIRED);
+    }
+
+    @Test
+    void shouldResolveUnknownCodesToTheirClass() {
+        assertThat(HttpStatus.resolve(299)).isEqualTo(HttpStatus.OK);
+        assertThat(HttpStatus.resolve(499)).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(HttpStatus.resolve(520)).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(HttpStatus.resolve(0)).isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(HttpStatus.resolve(600)).isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(HttpStatus.resolve(-1)).isEqualTo(HttpStatus.BAD_GATEWAY);
+    }
+
+    @Test
+    void shouldClassifyStatuses() {
+        assertThat(HttpStatus.CONTINUE.category()).isEqualTo(HttpStatus.Category.INFORMATIONAL);
+        assertThat(HttpStatus.NO_CONTENT.category()).isEqualTo(HttpStatus.Category.SUCCESS);
+        assertThat(HttpStatus.NOT_MODIFIED.category()).isEqualTo(HttpStatus.Category.REDIRECTION);
+        assertThat(HttpStatus.TOO_MANY_REQUESTS.category()).isEqualTo(HttpStatus.Category.CLIENT_ERROR);
+        assertThat(HttpStatus.GATEWAY_TIMEOUT.category()).isEqualTo(HttpStatus.Category.SERVER_ERROR);
+
+        assertThat(HttpStatus.TOO_MANY_REQUESTS.isRetryable()).isTrue();
+        assertThat(HttpStatus.SERVICE_UNAVAILABLE.isRetryable()).isTrue();
+        assertThat(HttpStatus.NOT_IMPLEMENTED.isRetryable()).isFalse();
+        assertThat(HttpStatus.NOT_FOUND.isRetryable()).isFalse();
+    }
+}
@@ -0,0 +1,71 @@
+package org.g5.yf.http;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * I drive a request against the client stack a given number of times, at a given concurrency - each request on a
+ * virtual thread - and report the throughput and latency percentiles achieved.
+ */
+public final class LoadHarness {
+
+    private LoadHarness() {
+    }
+
+    public static Report run(int requests, int concurrency, Callable<?> request) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                inFlight.acquire();
+                executor.execute(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        request.call();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - sent;
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        Arrays.sort(latencies);
+        return new Report(requests, failures.get(), Duration.ofNanos(System.nanoTime() - start), latencies);
+    }
+
+    /**
+     * @param sortedLatencies the latency of each request, in nanoseconds, shortest first.
+     */
+    public record Report(int requests, int failures, Duration elapsed, long[] sortedLatencies) {
+
+        public double throughput() {
+            return requests / (elapsed.toNanos() / 1e9);
+        }
+
+        public Duration percentile(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return Duration.ofNanos(sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))]);
+        }
+
+        @Override
+        public String toString() {
+            return "%d requests (%d failed) in %dms: %.0f req/s; latency p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms".formatted(
+                    requests, failures, elapsed.toMillis(), throughput(),
+                    millis(percentile(50)), millis(percentile(90)), millis(percentile(99)), millis(percentile(100)));
+        }
+
+        private static double millis(Duration duration) {
+            return duration.toNanos() / 1e6;
+        }
+    }
+}
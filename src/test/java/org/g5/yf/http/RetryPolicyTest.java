@@ -0,0 +1,59 @@
+package org.g5.yf.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy retryPolicy = RetryPolicy.builder()
+            .maxAttempts(3)
+            .baseDelay(Duration.ofMillis(100))
+            .maxDelay(Duration.ofMillis(250))
+            .maxRetryAfter(Duration.ofSeconds(5))
+            .build();
+    private final HttpRequest get = HttpRequest.newBuilder(URI.create("http://localhost/chart")).GET().build();
+    private final HttpRequest post = HttpRequest.newBuilder(URI.create("http://localhost/chart")).POST(HttpRequest.BodyPublishers.noBody()).build();
+
+    @Test
+    void shouldRetryOnlyTransientFailuresOfIdempotentRequests() {
+        assertThat(retryPolicy.shouldRetry(get, 1, failure(HttpStatus.SERVICE_UNAVAILABLE, null))).isTrue();
+        assertThat(retryPolicy.shouldRetry(get, 2, failure(HttpStatus.TOO_MANY_REQUESTS, null))).isTrue();
+        assertThat(retryPolicy.shouldRetry(get, 3, failure(HttpStatus.SERVICE_UNAVAILABLE, null))).isFalse();
+        assertThat(retryPolicy.shouldRetry(get, 1, failure(HttpStatus.NOT_FOUND, null))).isFalse();
+        assertThat(retryPolicy.shouldRetry(get, 1, new IllegalStateException())).isFalse();
+        assertThat(retryPolicy.shouldRetry(post, 1, failure(HttpStatus.BAD_GATEWAY, null))).isFalse();
+        //a server asking for too long a wait is not retried
+        assertThat(retryPolicy.shouldRetry(get, 1, failure(HttpStatus.SERVICE_UNAVAILABLE, Duration.ofMinutes(1)))).isFalse();
+        //an open circuit fails fast - its 503 is not retried, however short the wait
+        assertThat(retryPolicy.shouldRetry(get, 1, new HttpRequestProcessor.CircuitOpenException("localhost", Duration.ofMillis(10)))).isFalse();
+    }
+
+    @Test
+    void shouldBackOffWithJitterHonouringRetryAfter() {
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            assertThat(retryPolicy.delayBefore(attempt, failure(HttpStatus.BAD_GATEWAY, null)))
+                    .isBetween(Duration.ZERO, Duration.ofMillis(250));
+        }
+        assertThat(retryPolicy.delayBefore(1, failure(HttpStatus.TOO_MANY_REQUESTS, Duration.ofSeconds(2)))).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void shouldParseRetryAfterSecondsAndDates() {
+        assertThat(RetryPolicy.parseRetryAfter("120")).contains(Duration.ofSeconds(120));
+        String inAMinute = ZonedDateTime.now().plusMinutes(1).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertThat(RetryPolicy.parseRetryAfter(inAMinute)).hasValueSatisfying(delay ->
+                assertThat(delay).isBetween(Duration.ofSeconds(55), Duration.ofSeconds(60)));
+        assertThat(RetryPolicy.parseRetryAfter("soon")).isEmpty();
+    }
+
+    private static HttpRequestProcessor.RequestFailedException failure(HttpStatus status, Duration retryAfter) {
+        return new HttpRequestProcessor.RequestFailedException(status, "failed", null, retryAfter);
+    }
+}
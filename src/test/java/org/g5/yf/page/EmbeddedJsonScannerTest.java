@@ -0,0 +1,63 @@
+package org.g5.yf.page;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.core.JsonPointer;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddedJsonScannerTest {
+
+    private static final String PAGE = """
+            <!DOCTYPE html>
+            <html><head>
+            <!-- <script data-sveltekit-fetched data-url="commented">{"ignored":true}</script> -->
+            <script>if (a < b) { document.write("<p>"); }</script>
+            <script type="application/json" data-sveltekit-fetched data-url="https://query1.finance.yahoo.com/v1/finance/quoteSummary/AAPL?modules=price&amp;lang=en-US">
+            {"status":200,"body":{"price":{"regularMarketPrice":{"raw":252.5}},"summaryDetail":{"beta":1.2}}}
+            </script>
+            <SCRIPT data-sveltekit-fetched data-url='https://query1.finance.yahoo.com/ws/fundamentals-timeseries/v1/finance/timeseries/AAPL'>{"status":200,"body":{"timeseries":{"result":[]}}}</SCRIPT>
+            <script data-sveltekit-fetched data-url="https://query1.finance.yahoo.com/v7/finance/spark">{"status":200}</script>
+            </head><body><p>&lt;script&gt;</p></body></html>
+            """;
+
+    private final EmbeddedJsonScanner scanner = new EmbeddedJsonScanner(JsonMapper.builder().build());
+
+    @Test
+    void shouldExtractMatchingEmbeddedJson() {
+        Map<String, JsonNode> data = scanner.scan(page(), url -> url.contains("finance/quoteSummary") || url.contains("finance/timeseries"));
+
+        assertThat(data.keySet()).containsExactly(
+                "https://query1.finance.yahoo.com/v1/finance/quoteSummary/AAPL?modules=price&lang=en-US",
+                "https://query1.finance.yahoo.com/ws/fundamentals-timeseries/v1/finance/timeseries/AAPL");
+        assertThat(data.get("https://query1.finance.yahoo.com/v1/finance/quoteSummary/AAPL?modules=price&lang=en-US")
+                .at("/body/price/regularMarketPrice/raw").asDouble()).isEqualTo(252.5);
+        assertThat(data.get("https://query1.finance.yahoo.com/ws/fundamentals-timeseries/v1/finance/timeseries/AAPL")
+                .at("/body/timeseries/result").isArray()).isTrue();
+    }
+
+    @Test
+    void shouldProjectEmbeddedJson() {
+        Map<String, JsonNode> data = scanner.scan(page(), url -> url.contains("finance/quoteSummary"), JsonPointer.compile("/body/price"));
+
+        JsonNode quoteSummary = data.values().iterator().next();
+        assertThat(quoteSummary.at("/body/price/regularMarketPrice/raw").asDouble()).isEqualTo(252.5);
+        assertThat(quoteSummary.at("/body/summaryDetail").isMissingNode()).isTrue();
+        assertThat(quoteSummary.has("status")).isFalse();
+    }
+
+    @Test
+    void shouldDecodeCharacterReferences() {
+        assertThat(EmbeddedJsonScanner.decodeReferences("a&amp;b&#38;c&#x26;d&unknown;e&")).isEqualTo("a&b&c&d&unknown;e&");
+    }
+
+    private static InputStream page() {
+        return new ByteArrayInputStream(PAGE.getBytes(StandardCharsets.UTF_8));
+    }
+}